@@ -0,0 +1,139 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import it.smartcommunitylab.dbsts.db.UserRepository;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.CurrentSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@Slf4j
+public class AuditEndpoint implements InitializingBean {
+
+    public static final String EXPORT_URL = "/sts/audit";
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    //flush to client every N records
+    private static final int FLUSH_SIZE = 1000;
+
+    @Autowired(required = false)
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${sts.audit.export}")
+    private boolean enabled;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(objectMapper, "object mapper is required");
+    }
+
+    @GetMapping(value = EXPORT_URL)
+    public ResponseEntity<StreamingResponseBody> export(
+        @RequestParam(required = false) String from,
+        @RequestParam(required = false) String to,
+        @RequestParam(required = false, name = "web_user") String webUser,
+        @RequestParam(required = false) String database,
+        @CurrentSecurityContext SecurityContext securityContext
+    ) {
+        Authentication authentication = securityContext.getAuthentication();
+        if (authentication == null || !(authentication.isAuthenticated())) {
+            throw new InsufficientAuthenticationException("Invalid or missing authentication");
+        }
+
+        if (!enabled || userRepository == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "audit export not enabled");
+        }
+
+        Instant fromInstant = parse(from);
+        Instant toInstant = parse(to);
+
+        log.info("export audit records for client {}", authentication.getName());
+        if (log.isTraceEnabled()) {
+            log.trace("filters from {} to {} web user {} database {}", from, to, webUser, database);
+        }
+
+        ObjectWriter writer = objectMapper.writer();
+        StreamingResponseBody body = (OutputStream out) -> {
+            int[] count = { 0 };
+            try {
+                userRepository.stream(
+                    fromInstant,
+                    toInstant,
+                    webUser,
+                    database,
+                    user -> {
+                        try {
+                            out.write(writer.writeValueAsBytes(user));
+                            out.write('\n');
+                            if (++count[0] % FLUSH_SIZE == 0) {
+                                out.flush();
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                );
+            } catch (UncheckedIOException e) {
+                //client went away, stop streaming
+                throw e.getCause();
+            }
+
+            out.flush();
+            log.debug("exported {} audit records", count[0]);
+        };
+
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private static Instant parse(String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid date: " + value);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.api;
+
+import it.smartcommunitylab.dbsts.breaker.CircuitBreakerRegistry;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreakerStatus;
+import it.smartcommunitylab.dbsts.monitor.CatalogMonitor;
+import it.smartcommunitylab.dbsts.monitor.CatalogStatus;
+import it.smartcommunitylab.dbsts.pool.AdapterPool;
+import it.smartcommunitylab.dbsts.pool.PoolStatus;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class StatusEndpoint {
+
+    public static final String BREAKERS_URL = "/sts/status/breakers";
+    public static final String POOL_URL = "/sts/status/pool";
+    public static final String CATALOG_URL = "/sts/status/catalog";
+
+    @Autowired(required = false)
+    private CircuitBreakerRegistry breakerRegistry;
+
+    @Autowired(required = false)
+    private AdapterPool adapterPool;
+
+    @Autowired(required = false)
+    private CatalogMonitor catalogMonitor;
+
+    @GetMapping(value = BREAKERS_URL)
+    public List<CircuitBreakerStatus> breakers() {
+        return breakerRegistry != null ? breakerRegistry.status() : Collections.emptyList();
+    }
+
+    @GetMapping(value = POOL_URL)
+    public PoolStatus pool() {
+        return adapterPool != null ? adapterPool.status() : null;
+    }
+
+    @GetMapping(value = CATALOG_URL)
+    public CatalogStatus catalog() {
+        return catalogMonitor != null ? catalogMonitor.status() : null;
+    }
+}
@@ -17,28 +17,51 @@
 package it.smartcommunitylab.dbsts.api;
 
 import it.smartcommunitylab.dbsts.api.TokenResponse.TokenResponseBuilder;
+import it.smartcommunitylab.dbsts.config.StartupTracker;
 import it.smartcommunitylab.dbsts.db.DbManager;
 import it.smartcommunitylab.dbsts.db.DbUser;
+import it.smartcommunitylab.dbsts.deadline.Deadline;
 import it.smartcommunitylab.dbsts.jwt.JwtService;
 import it.smartcommunitylab.dbsts.jwt.WebIdentity;
+import it.smartcommunitylab.dbsts.limits.LimitsService;
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.CurrentSecurityContext;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -47,6 +70,12 @@ import org.springframework.web.util.UriComponentsBuilder;
 public class StsEndpoint implements InitializingBean {
 
     public static final String TOKEN_URL = "/sts/web";
+    public static final String BATCH_URL = "/sts/web/batch";
+    public static final String STREAM_URL = "/sts/web/stream";
+    public static final String RENEW_URL = "/sts/renew";
+    public static final String REVOKE_URL = "/sts/revoke";
+
+    private static final int MIN_ROTATION_DELAY = 5;
 
     @Autowired
     private JwtService jwtService;
@@ -54,21 +83,60 @@ public class StsEndpoint implements InitializingBean {
     @Autowired
     private DbManager dbManager;
 
+    @Autowired
+    private LimitsService limitsService;
+
+    @Autowired
+    private StartupTracker startupTracker;
+
+    @Autowired
+    @Qualifier("exchangeExecutor")
+    private AsyncTaskExecutor executor;
+
+    @Value("${sts.async.enabled}")
+    private boolean async;
+
+    @Value("${sts.batch.max-entries}")
+    private int maxBatchEntries;
+
+    @Autowired
+    @Qualifier("streamScheduler")
+    private TaskScheduler streamScheduler;
+
+    //rotation lead time and jitter window, in seconds
+    @Value("${sts.stream.lead}")
+    private int streamLead;
+
+    @Value("${sts.stream.jitter}")
+    private int streamJitter;
+
     @Value("${adapter.connection.platform}")
     private String platform;
 
     @Value("${adapter.connection.url}")
     private String url;
 
+    //pooler endpoint, replaces the server when enabled
+    @Value("${adapter.pooler.enabled}")
+    private boolean pooler;
+
+    @Value("${adapter.pooler.host}")
+    private String poolerHost;
+
+    @Value("${adapter.pooler.port}")
+    private Integer poolerPort;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Assert.notNull(jwtService, "jwt service is required");
         Assert.notNull(dbManager, "db manager is required");
+        Assert.notNull(limitsService, "limits service is required");
     }
 
     @RequestMapping(value = TOKEN_URL, method = { RequestMethod.POST, RequestMethod.GET })
-    public TokenResponse exchange(
+    public CompletableFuture<TokenResponse> exchange(
         @RequestParam Map<String, String> params,
+        @RequestHeader(value = Deadline.HEADER, required = false) String timeout,
         @CurrentSecurityContext SecurityContext securityContext
     ) {
         Authentication authentication = securityContext.getAuthentication();
@@ -82,25 +150,53 @@ public class StsEndpoint implements InitializingBean {
             throw new IllegalArgumentException("invalid request");
         }
 
-        TokenRequest request = TokenRequest.builder()
-            .token(params.get("token"))
-            .username(params.get("username"))
-            .duration(params.get("duration") != null ? Integer.parseInt(params.get("duration")) : null)
-            .roles(params.get("roles") != null ? StringUtils.commaDelimitedListToSet(params.get("roles")) : null)
-            .database(params.get("database"))
-            .build();
+        TokenRequest request = buildRequest(params);
+        Deadline deadline = Deadline.parse(timeout);
 
         String client = authentication.getName();
         log.debug("request token exchange for client {}", client);
+        limitsService.checkClient(client);
+
+        if (!async) {
+            try (deadline) {
+                return CompletableFuture.completedFuture(Deadline.call(deadline, () -> exchange(client, request)));
+            }
+        }
+
+        //release the container thread while waiting on identity and adapter
+        CompletableFuture<TokenResponse> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> Deadline.call(deadline, () -> exchange(client, request)), executor);
+        } catch (TaskRejectedException e) {
+            //executor saturated, mapped to 503
+            if (deadline != null) {
+                deadline.close();
+            }
+            throw e;
+        }
+        if (deadline != null) {
+            future.whenComplete((r, e) -> deadline.close());
+        }
 
+        return future;
+    }
+
+    private TokenResponse exchange(String client, TokenRequest request) {
+        TokenResponse response = buildResponse(client, exchangeUser(client, request));
+        startupTracker.onExchange();
+        return response;
+    }
+
+    private DbUser exchangeUser(String client, TokenRequest request) {
         WebIdentity webIdentity = jwtService.assumeWebIdentity(request);
         log.debug("assume web identity {} for client {}", webIdentity.getUsername(), client);
+        limitsService.checkIdentity(webIdentity.getIssuer(), webIdentity.getUsername());
 
         //obtain db user
         Set<String> roles = request.getRoles();
         log.debug("generate db user for client {} requested roles {}", client, roles);
 
-        DbUser dbUser = dbManager.exchange(webIdentity, roles);
+        DbUser dbUser = dbManager.exchange(client, webIdentity, roles);
         log.debug(
             "generated db user {} with roles {} valid until {}",
             dbUser.getUsername(),
@@ -108,6 +204,334 @@ public class StsEndpoint implements InitializingBean {
             dbUser.getValidUntil()
         );
 
+        return dbUser;
+    }
+
+    @PostMapping(value = BATCH_URL)
+    public List<TokenResponse> batch(
+        @RequestBody BatchTokenRequest request,
+        @RequestHeader(value = Deadline.HEADER, required = false) String timeout,
+        @CurrentSecurityContext SecurityContext securityContext
+    ) {
+        Authentication authentication = securityContext.getAuthentication();
+
+        //resolve client authentication
+        if (authentication == null || !(authentication.isAuthenticated())) {
+            throw new InsufficientAuthenticationException("Invalid or missing authentication");
+        }
+
+        if (request == null || request.getEntries() == null || request.getEntries().isEmpty()) {
+            throw new IllegalArgumentException("invalid request");
+        }
+        if (request.getEntries().size() > maxBatchEntries) {
+            throw new IllegalArgumentException("invalid request: too many entries");
+        }
+
+        String client = authentication.getName();
+        log.debug("request batch token exchange for client {}", client);
+        limitsService.checkClient(client);
+
+        //a single deadline for all entries
+        try (Deadline deadline = Deadline.parse(timeout)) {
+            return batch(client, request, deadline);
+        }
+    }
+
+    private List<TokenResponse> batch(String client, BatchTokenRequest request, Deadline deadline) {
+        //validate identity once for all entries
+        WebIdentity webIdentity = Deadline.call(deadline, () ->
+            jwtService.assumeWebIdentity(
+                TokenRequest.builder().token(request.getToken()).username(request.getUsername()).build()
+            )
+        );
+        log.debug("assume web identity {} for client {}", webIdentity.getUsername(), client);
+        limitsService.checkIdentity(webIdentity.getIssuer(), webIdentity.getUsername());
+        boolean token = StringUtils.hasText(request.getToken());
+
+        //provision entries in parallel, errors are reported per entry
+        List<TokenRequest> entries = request.getEntries();
+        List<CompletableFuture<TokenResponse>> results = IntStream.range(0, entries.size())
+            .mapToObj(i -> {
+                TokenRequest entry = entries.get(i);
+                return submit(() ->
+                    Deadline.call(deadline, () -> {
+                        //one rate token per entry, the first one was charged for the request
+                        if (i > 0) {
+                            limitsService.checkClient(client);
+                            limitsService.checkIdentity(webIdentity.getIssuer(), webIdentity.getUsername());
+                        }
+
+                        WebIdentity identity = jwtService.scopeWebIdentity(
+                            webIdentity,
+                            token,
+                            entry.getDatabase(),
+                            entry.getDuration()
+                        );
+                        DbUser dbUser = dbManager.exchange(client, identity, entry.getRoles());
+                        log.debug("generated db user {} for batch entry", dbUser.getUsername());
+
+                        return buildResponse(client, dbUser);
+                    })
+                ).exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.error("Error in batch entry for database {}: {}", entry.getDatabase(), cause.getMessage());
+
+                    return TokenResponse.builder()
+                        .clientId(client)
+                        .database(entry.getDatabase())
+                        .error(cause.getMessage())
+                        .build();
+                });
+            })
+            .toList();
+
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (TaskRejectedException e) {
+            //executor saturated, report as entry error
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @GetMapping(value = STREAM_URL, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+        @RequestParam Map<String, String> params,
+        @CurrentSecurityContext SecurityContext securityContext
+    ) {
+        Authentication authentication = securityContext.getAuthentication();
+
+        //resolve client authentication
+        if (authentication == null || !(authentication.isAuthenticated())) {
+            throw new InsufficientAuthenticationException("Invalid or missing authentication");
+        }
+
+        if (params == null) {
+            throw new IllegalArgumentException("invalid request");
+        }
+
+        TokenRequest request = buildRequest(params);
+
+        String client = authentication.getName();
+        log.debug("request credentials stream for client {}", client);
+        limitsService.checkClient(client);
+
+        //first credentials are obtained before opening the stream, errors are returned as usual
+        DbUser dbUser = exchangeUser(client, request);
+
+        //no timeout, stream ends when the identity can not be renewed
+        SseEmitter emitter = new SseEmitter(0L);
+        CredentialsStream stream = new CredentialsStream(client, request, emitter);
+        emitter.onCompletion(stream::cancel);
+        emitter.onTimeout(stream::cancel);
+        emitter.onError(e -> stream.cancel());
+
+        stream.push(dbUser);
+        return emitter;
+    }
+
+    @RequestMapping(value = RENEW_URL, method = { RequestMethod.POST })
+    public TokenResponse renew(
+        @RequestParam Map<String, String> params,
+        @CurrentSecurityContext SecurityContext securityContext
+    ) {
+        Authentication authentication = securityContext.getAuthentication();
+
+        //resolve client authentication
+        if (authentication == null || !(authentication.isAuthenticated())) {
+            throw new InsufficientAuthenticationException("Invalid or missing authentication");
+        }
+
+        if (dbManager.isStateless()) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "renewal requires an audit store");
+        }
+
+        if (params == null || !StringUtils.hasText(params.get("db_user"))) {
+            throw new IllegalArgumentException("invalid request");
+        }
+
+        TokenRequest request = buildRequest(params);
+        String username = params.get("db_user");
+
+        String client = authentication.getName();
+        log.debug("request credentials renewal for client {}", client);
+        limitsService.checkClient(client);
+
+        //web identity must still be valid
+        WebIdentity webIdentity = jwtService.assumeWebIdentity(request);
+        log.debug("assume web identity {} for client {}", webIdentity.getUsername(), client);
+
+        DbUser dbUser = dbManager.renew(webIdentity, username);
+        log.debug("renewed db user {} valid until {}", dbUser.getUsername(), dbUser.getValidUntil());
+
+        return buildResponse(client, dbUser);
+    }
+
+    @RequestMapping(value = REVOKE_URL, method = { RequestMethod.POST })
+    public RevokeResponse revoke(
+        @RequestParam Map<String, String> params,
+        @CurrentSecurityContext SecurityContext securityContext
+    ) {
+        Authentication authentication = securityContext.getAuthentication();
+
+        //resolve client authentication
+        if (authentication == null || !(authentication.isAuthenticated())) {
+            throw new InsufficientAuthenticationException("Invalid or missing authentication");
+        }
+
+        if (params == null) {
+            throw new IllegalArgumentException("invalid request");
+        }
+
+        if (dbManager.isStateless()) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "revocation requires an audit store");
+        }
+
+        String webIssuer = params.get("web_issuer");
+        String webUser = params.get("web_user");
+        String database = params.get("database");
+
+        //user names are scoped by issuer, never revoke across identity providers
+        if (StringUtils.hasText(webUser) && !StringUtils.hasText(webIssuer)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid request: web user requires web issuer");
+        }
+
+        String client = authentication.getName();
+        log.info("request revoke for web user {} database {} from client {}", webUser, database, client);
+
+        int count = dbManager.revoke(webIssuer, webUser, database);
+        log.debug("revoked {} db users for client {}", count, client);
+
+        return RevokeResponse.builder()
+            .clientId(client)
+            .webIssuer(webIssuer)
+            .webUser(webUser)
+            .database(database)
+            .revoked(count)
+            .build();
+    }
+
+    /*
+     * Credentials stream: pushes renewed credentials shortly before expiration,
+     * rotations are spread with a random jitter across subscribers
+     */
+    private class CredentialsStream {
+
+        private final String client;
+        private final TokenRequest request;
+        private final SseEmitter emitter;
+
+        private volatile DbUser current;
+        private volatile ScheduledFuture<?> next;
+        private volatile boolean cancelled = false;
+
+        CredentialsStream(String client, TokenRequest request, SseEmitter emitter) {
+            this.client = client;
+            this.request = request;
+            this.emitter = emitter;
+        }
+
+        void push(DbUser dbUser) {
+            try {
+                emitter.send(SseEmitter.event().name("credentials").data(buildResponse(client, dbUser)));
+            } catch (IOException e) {
+                //client went away
+                cancel();
+                return;
+            }
+
+            this.current = dbUser;
+            if (dbUser.getValidUntil() == null) {
+                //nothing to rotate
+                emitter.complete();
+                return;
+            }
+
+            //schedule rotation before expiration, with jitter
+            long jitter = streamJitter > 0 ? ThreadLocalRandom.current().nextLong(streamJitter + 1) : 0;
+            Instant at = dbUser.getValidUntil().minusSeconds(streamLead + jitter);
+            Instant min = Instant.now().plusSeconds(MIN_ROTATION_DELAY);
+            if (at.isBefore(min)) {
+                at = min;
+            }
+
+            if (!cancelled) {
+                log.debug("schedule rotation for {} at {}", dbUser.getUsername(), at);
+                this.next = streamScheduler.schedule(this::rotate, at);
+            }
+        }
+
+        void rotate() {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                //identity must still be valid
+                WebIdentity webIdentity = jwtService.assumeWebIdentity(request);
+
+                DbUser dbUser = null;
+                if (!dbManager.isStateless()) {
+                    try {
+                        //extend the current role when possible
+                        dbUser = dbManager.renew(webIdentity, current.getUsername());
+                    } catch (IllegalArgumentException e) {
+                        log.debug("renewal not available for {}, exchange", current.getUsername());
+                    }
+                }
+                if (dbUser == null) {
+                    dbUser = dbManager.exchange(client, webIdentity, request.getRoles());
+                }
+
+                if (
+                    dbUser.getValidUntil() != null &&
+                    current.getValidUntil() != null &&
+                    !dbUser.getValidUntil().isAfter(current.getValidUntil())
+                ) {
+                    //identity expires with the credentials, nothing to extend
+                    log.debug("identity for {} can not be extended, close stream", current.getUsername());
+                    emitter.send(SseEmitter.event().name("expired").data(""));
+                    emitter.complete();
+                    return;
+                }
+
+                push(dbUser);
+            } catch (IOException e) {
+                cancel();
+            } catch (RuntimeException e) {
+                log.error("Error rotating credentials for client {}: {}", client, e.getMessage());
+                try {
+                    emitter.send(SseEmitter.event().name("error").data(e.getMessage() != null ? e.getMessage() : ""));
+                } catch (IOException ie) {
+                    //skip
+                }
+                emitter.complete();
+            }
+        }
+
+        void cancel() {
+            this.cancelled = true;
+            ScheduledFuture<?> f = next;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private TokenRequest buildRequest(Map<String, String> params) {
+        return TokenRequest.builder()
+            .token(params.get("token"))
+            .username(params.get("username"))
+            .duration(params.get("duration") != null ? Integer.parseInt(params.get("duration")) : null)
+            .roles(params.get("roles") != null ? StringUtils.commaDelimitedListToSet(params.get("roles")) : null)
+            .database(params.get("database"))
+            .build();
+    }
+
+    private TokenResponse buildResponse(String client, DbUser dbUser) {
         //build response
         Long expiration = dbUser.getValidUntil() != null
             ? Duration.between(Instant.now(), dbUser.getValidUntil()).toSeconds()
@@ -141,6 +565,21 @@ public class StsEndpoint implements InitializingBean {
             }
         }
 
+        //replicas ready to serve reads for this user
+        if (dbUser.getReplicas() != null && !dbUser.getReplicas().isEmpty()) {
+            response.readEndpoints(dbUser.getReplicas());
+        }
+
+        if (pooler) {
+            //clients connect through the pooler
+            if (StringUtils.hasText(poolerHost)) {
+                response.host(poolerHost);
+            }
+            if (poolerPort != null && poolerPort > 0) {
+                response.port(poolerPort);
+            }
+        }
+
         return response.build();
     }
 }
@@ -19,6 +19,7 @@ package it.smartcommunitylab.dbsts.api;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.Serializable;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -44,6 +45,9 @@ public class TokenResponse implements Serializable {
     @JsonProperty("port")
     private Integer port;
 
+    @JsonProperty("read_endpoints")
+    private List<String> readEndpoints;
+
     @JsonProperty("database")
     private String database;
 
@@ -61,4 +65,7 @@ public class TokenResponse implements Serializable {
 
     @JsonProperty("issuer")
     private String issuer;
+
+    @JsonProperty("error")
+    private String error;
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.breaker;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Count based circuit breaker: tracks failures and slow calls over the last
+ * window of calls and opens when either rate crosses its threshold. After the
+ * wait duration a limited number of probe calls is let through (half-open),
+ * closing the circuit when all of them succeed.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final String name;
+    private final int window;
+    private final int failureRate;
+    private final int slowCallRate;
+    private final long slowCallDuration;
+    private final long waitDuration;
+    private final int halfOpenCalls;
+
+    //ring buffer of outcomes, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean[] failures;
+    private final boolean[] slows;
+    private int index = 0;
+    private int calls = 0;
+    private int failureCount = 0;
+    private int slowCount = 0;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt = 0;
+    private int probes = 0;
+    private int probeSuccess = 0;
+
+    public CircuitBreaker(String name, CircuitBreakerProperties properties) {
+        this.name = name;
+        this.window = Math.max(1, properties.getWindow());
+        this.failureRate = properties.getFailureRate();
+        this.slowCallRate = properties.getSlowCallRate();
+        this.slowCallDuration = TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallDuration());
+        this.waitDuration = TimeUnit.MILLISECONDS.toNanos(properties.getWaitDuration());
+        this.halfOpenCalls = Math.max(1, properties.getHalfOpenCalls());
+
+        this.failures = new boolean[window];
+        this.slows = new boolean[window];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Execute the call through the breaker. Only exceptions matching the predicate count
+     * as failures, others (e.g. invalid input) are rethrown and recorded as successful calls.
+     * Errors are always recorded as failures.
+     */
+    public <T> T execute(Supplier<T> supplier, Predicate<Throwable> isFailure) {
+        acquire();
+
+        long start = System.nanoTime();
+        try {
+            T result = supplier.get();
+            record(false, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            record(isFailure.test(e), System.nanoTime() - start);
+            throw e;
+        } catch (Error e) {
+            //always a failure, and a half-open probe slot must be given back
+            record(true, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    public void run(Runnable runnable, Predicate<Throwable> isFailure) {
+        execute(
+            () -> {
+                runnable.run();
+                return null;
+            },
+            isFailure
+        );
+    }
+
+    public CircuitBreakerStatus status() {
+        lock.lock();
+        try {
+            return CircuitBreakerStatus.builder()
+                .name(name)
+                .state(state.name())
+                .calls(calls)
+                .failureRate(calls > 0 ? (failureCount * 100) / calls : 0)
+                .slowCallRate(calls > 0 ? (slowCount * 100) / calls : 0)
+                .build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire() {
+        //fast path, no lock while closed
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (state == State.OPEN) {
+                long elapsed = now - openedAt;
+                if (elapsed < waitDuration) {
+                    long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitDuration - elapsed) + 1);
+                    throw new CircuitOpenException(name, retryAfter);
+                }
+
+                log.info("circuit {} half-open, probing with {} calls", name, halfOpenCalls);
+                state = State.HALF_OPEN;
+                probes = 0;
+                probeSuccess = 0;
+            }
+
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenCalls) {
+                    //probes in flight, reject until they complete
+                    throw new CircuitOpenException(name, 1);
+                }
+                probes++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failure, long duration) {
+        boolean slow = duration >= slowCallDuration;
+
+        lock.lock();
+        try {
+            switch (state) {
+                case HALF_OPEN -> {
+                    if (failure || slow) {
+                        open();
+                    } else if (++probeSuccess >= halfOpenCalls) {
+                        close();
+                    }
+                }
+                case CLOSED -> {
+                    //evict the oldest outcome once the window is full
+                    if (calls == window) {
+                        failureCount -= failures[index] ? 1 : 0;
+                        slowCount -= slows[index] ? 1 : 0;
+                    } else {
+                        calls++;
+                    }
+
+                    failures[index] = failure;
+                    slows[index] = slow;
+                    failureCount += failure ? 1 : 0;
+                    slowCount += slow ? 1 : 0;
+                    index = (index + 1) % window;
+
+                    if (
+                        calls == window &&
+                        (failureCount * 100 >= failureRate * calls || slowCount * 100 >= slowCallRate * calls)
+                    ) {
+                        open();
+                    }
+                }
+                default -> {
+                    //outcome of a call started before opening, ignore
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        log.warn(
+            "circuit {} open: failure rate {}%, slow call rate {}%",
+            name,
+            calls > 0 ? (failureCount * 100) / calls : 0,
+            calls > 0 ? (slowCount * 100) / calls : 0
+        );
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        log.info("circuit {} closed", name);
+        state = State.CLOSED;
+        index = 0;
+        calls = 0;
+        failureCount = 0;
+        slowCount = 0;
+        Arrays.fill(failures, false);
+        Arrays.fill(slows, false);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.breaker;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "sts.breaker", ignoreUnknownFields = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CircuitBreakerProperties {
+
+    private boolean enabled = false;
+
+    //number of calls evaluated for rates
+    private int window = 20;
+
+    //percentage thresholds to open the circuit
+    private int failureRate = 50;
+    private int slowCallRate = 80;
+
+    //calls slower than this (ms) are slow
+    private long slowCallDuration = 5000;
+
+    //time (ms) in open state before probing
+    private long waitDuration = 30000;
+
+    //probe calls in half-open state
+    private int halfOpenCalls = 3;
+}
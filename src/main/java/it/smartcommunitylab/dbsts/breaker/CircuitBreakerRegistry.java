@@ -0,0 +1,60 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.breaker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Named circuit breakers sharing the same configuration
+ */
+@Service
+public class CircuitBreakerRegistry {
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private CircuitBreakerProperties properties;
+
+    @Autowired
+    public void setProperties(CircuitBreakerProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties != null && properties.isEnabled();
+    }
+
+    /**
+     * Get or create the breaker with the given name, null when breakers are disabled
+     */
+    @Nullable
+    public CircuitBreaker get(String name) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        return breakers.computeIfAbsent(name, n -> new CircuitBreaker(n, properties));
+    }
+
+    public List<CircuitBreakerStatus> status() {
+        return breakers.values().stream().map(CircuitBreaker::status).toList();
+    }
+}
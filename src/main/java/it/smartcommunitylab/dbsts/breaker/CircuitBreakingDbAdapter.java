@@ -0,0 +1,97 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.breaker;
+
+import it.smartcommunitylab.dbsts.db.DbAdapter;
+import it.smartcommunitylab.dbsts.db.DbUser;
+import it.smartcommunitylab.dbsts.deadline.Deadline;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.springframework.dao.DataAccessException;
+import org.springframework.util.Assert;
+
+/**
+ * Adapter decorator routing every call through a circuit breaker.
+ * Only database access errors (including timeouts) count as failures,
+ * statements cancelled because the client deadline passed do not.
+ */
+public class CircuitBreakingDbAdapter implements DbAdapter {
+
+    private static final Predicate<Throwable> FAILURE = e -> e instanceof DataAccessException && !Deadline.isExceeded();
+
+    private final DbAdapter adapter;
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakingDbAdapter(DbAdapter adapter, CircuitBreaker breaker) {
+        Assert.notNull(adapter, "adapter is required");
+        Assert.notNull(breaker, "breaker is required");
+        this.adapter = adapter;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public DbUser create(DbUser user) {
+        return breaker.execute(() -> adapter.create(user), FAILURE);
+    }
+
+    @Override
+    public void delete(DbUser user) {
+        breaker.run(() -> adapter.delete(user), FAILURE);
+    }
+
+    @Override
+    public void delete(Collection<DbUser> users) {
+        breaker.run(() -> adapter.delete(users), FAILURE);
+    }
+
+    @Override
+    public DbUser renew(DbUser user) {
+        return breaker.execute(() -> adapter.renew(user), FAILURE);
+    }
+
+    @Override
+    public DbUser rotate(DbUser user) {
+        return breaker.execute(() -> adapter.rotate(user), FAILURE);
+    }
+
+    @Override
+    public void disable(DbUser user) {
+        breaker.run(() -> adapter.disable(user), FAILURE);
+    }
+
+    @Override
+    public List<DbUser> list(String pattern, String after, int limit) {
+        return breaker.execute(() -> adapter.list(pattern, after, limit), FAILURE);
+    }
+
+    @Override
+    public Set<String> exists(Collection<String> usernames) {
+        return breaker.execute(() -> adapter.exists(usernames), FAILURE);
+    }
+
+    @Override
+    public List<DbUser> expired(String after, int limit) {
+        return breaker.execute(() -> adapter.expired(after, limit), FAILURE);
+    }
+
+    @Override
+    public Set<String> roles() {
+        return breaker.execute(adapter::roles, FAILURE);
+    }
+}
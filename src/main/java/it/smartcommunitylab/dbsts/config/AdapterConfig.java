@@ -1,15 +1,35 @@
 package it.smartcommunitylab.dbsts.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreaker;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreakerRegistry;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreakingDbAdapter;
 import it.smartcommunitylab.dbsts.db.DbAdapter;
+import it.smartcommunitylab.dbsts.monitor.StatementMetrics;
+import it.smartcommunitylab.dbsts.pool.AdapterPool;
+import it.smartcommunitylab.dbsts.pooler.AuthFileStore;
+import it.smartcommunitylab.dbsts.pooler.AuthTableStore;
+import it.smartcommunitylab.dbsts.pooler.PoolerAuthStore;
+import it.smartcommunitylab.dbsts.pooler.PoolerDbAdapter;
+import it.smartcommunitylab.dbsts.pooler.PoolerProperties;
 import it.smartcommunitylab.dbsts.postgresql.PostgresqlAdapter;
 import it.smartcommunitylab.dbsts.postgresql.PostgresqlProperties;
+import it.smartcommunitylab.dbsts.replica.ReplicaAwareDbAdapter;
+import it.smartcommunitylab.dbsts.replica.ReplicaProperties;
+import it.smartcommunitylab.dbsts.replica.ReplicaSet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
 
 @Configuration
 public class AdapterConfig {
@@ -17,24 +37,118 @@ public class AdapterConfig {
     @Autowired
     PostgresqlProperties postgresqlProperties;
 
+    @Autowired
+    PoolerProperties poolerProperties;
+
+    @Autowired
+    CircuitBreakerRegistry breakerRegistry;
+
+    @Autowired
+    ReplicaProperties replicaProperties;
+
+    @Autowired
+    StatementMetrics statementMetrics;
+
     @Value("${adapter.connection.platform}")
     String platform;
 
+    @Value("${adapter.connection.warm-up}")
+    boolean warmUp;
+
+    @Value("${sts.audit.store}")
+    String auditStore;
+
+    @Value("${sts.reconciler.enabled}")
+    boolean reconciler;
+
     @Bean(name = "connectionDataSourceProperties")
     @ConfigurationProperties("adapter.connection")
     public DataSourceProperties connectionDataSourceProperties() {
         return new DataSourceProperties();
     }
 
+    @Bean
+    public AdapterPool adapterPool(
+        @Qualifier("connectionDataSourceProperties") DataSourceProperties connectionDataSourceProperties,
+        Environment environment
+    ) {
+        Assert.hasText(connectionDataSourceProperties.getUrl(), "url is required");
+
+        //not exposed as datasource bean, to keep the audit datasource as primary
+        HikariDataSource dataSource = connectionDataSourceProperties
+            .initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        Binder.get(environment).bind("adapter.connection.hikari", Bindable.ofInstance(dataSource));
+
+        AdapterPool pool = new AdapterPool(dataSource);
+        pool.setWarmUp(warmUp);
+        return pool;
+    }
+
     @Bean
     public DbAdapter adapter(
-        @Qualifier("connectionDataSourceProperties") DataSourceProperties connectionDataSourceProperties
+        @Qualifier("connectionDataSourceProperties") DataSourceProperties connectionDataSourceProperties,
+        AdapterPool adapterPool,
+        @Nullable ReplicaSet replicaSet
     ) {
         //supports only postgresql for now
         if ("postgresql".equals(platform)) {
-            return new PostgresqlAdapter(connectionDataSourceProperties, postgresqlProperties);
+            PostgresqlAdapter postgresqlAdapter = new PostgresqlAdapter(
+                connectionDataSourceProperties,
+                adapterPool.getDataSource(),
+                postgresqlProperties
+            );
+            postgresqlAdapter.setStatementMetrics(statementMetrics);
+            //stateless: tags are the only record of issued roles, the reconciler acts only on tagged roles
+            if ("none".equals(auditStore) || reconciler) {
+                postgresqlAdapter.setTagRoles(true);
+            }
+            DbAdapter adapter = postgresqlAdapter;
+
+            //sync pooler auth source when enabled
+            if (poolerProperties.isEnabled()) {
+                adapter = new PoolerDbAdapter(adapter, poolerStore(adapterPool), poolerProperties.getFormat());
+            }
+
+            //wrap with breaker when enabled
+            CircuitBreaker breaker = breakerRegistry.get("adapter");
+            if (breaker != null) {
+                adapter = new CircuitBreakingDbAdapter(adapter, breaker);
+            }
+
+            //wait for replicas outside the breaker, replication lag is not a failure
+            if (replicaSet != null) {
+                adapter = new ReplicaAwareDbAdapter(adapter, replicaSet);
+            }
+
+            return adapter;
         }
 
         return null;
     }
+
+    @Bean
+    public ReplicaSet replicaSet(
+        @Qualifier("connectionDataSourceProperties") DataSourceProperties connectionDataSourceProperties,
+        AdapterPool adapterPool
+    ) {
+        if (!replicaProperties.isEnabled() || !"postgresql".equals(platform)) {
+            return null;
+        }
+
+        return new ReplicaSet(adapterPool.getDataSource(), connectionDataSourceProperties, replicaProperties);
+    }
+
+    private PoolerAuthStore poolerStore(AdapterPool adapterPool) {
+        if (PoolerProperties.AUTH_FILE.equals(poolerProperties.getAuth())) {
+            return new AuthFileStore(poolerProperties);
+        }
+
+        if (PoolerProperties.AUTH_TABLE.equals(poolerProperties.getAuth())) {
+            return new AuthTableStore(new JdbcTemplate(adapterPool.getDataSource()), poolerProperties.getAuthTable());
+        }
+
+        throw new IllegalArgumentException("invalid pooler auth source: " + poolerProperties.getAuth());
+    }
 }
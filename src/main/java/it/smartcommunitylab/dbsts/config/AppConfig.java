@@ -16,7 +16,49 @@
 
 package it.smartcommunitylab.dbsts.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 @Configuration
-public class AppConfig {}
+public class AppConfig {
+
+    @Value("${spring.threads.virtual.enabled}")
+    private boolean virtualThreads;
+
+    @Value("${sts.async.concurrency}")
+    private int concurrency;
+
+    @Value("${sts.async.queue-capacity}")
+    private int queueCapacity;
+
+    /**
+     * Executor for async exchanges: container threads are released while
+     * requests wait on the adapter, concurrency is bounded by the limit.
+     * Once workers and queue are full submissions are rejected, callers are never blocked
+     */
+    @Bean(name = "exchangeExecutor")
+    public AsyncTaskExecutor exchangeExecutor() {
+        if (concurrency <= 0) {
+            //unbounded, a thread per exchange
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("exchange-");
+            executor.setVirtualThreads(virtualThreads);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(Math.max(queueCapacity, 0));
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("exchange-");
+        if (virtualThreads) {
+            executor.setThreadFactory(Thread.ofVirtual().name("exchange-", 0).factory());
+        }
+
+        return executor;
+    }
+}
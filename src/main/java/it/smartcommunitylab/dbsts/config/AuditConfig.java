@@ -0,0 +1,67 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package it.smartcommunitylab.dbsts.config;
+
+import it.smartcommunitylab.dbsts.db.JdbcUserRepository;
+import it.smartcommunitylab.dbsts.db.JournalUserRepository;
+import it.smartcommunitylab.dbsts.db.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@Configuration
+@Slf4j
+public class AuditConfig {
+
+    @Value("${sts.audit.store}")
+    private String store;
+
+    @Value("${sts.audit.journal.path}")
+    private String journalPath;
+
+    @Value("${sts.audit.journal.sync}")
+    private boolean journalSync;
+
+    @Value("${sts.audit.retention}")
+    private Integer retention;
+
+    /*
+     * Audit store selected at runtime, not via bean conditions:
+     * AOT processing would otherwise freeze the choice made at build time
+     */
+    @Bean
+    public UserRepository userRepository(JdbcTemplate jdbcTemplate) {
+        log.info("audit store {}", store);
+        switch (store) {
+            case "jdbc":
+                return new JdbcUserRepository(jdbcTemplate);
+            case "journal":
+                JournalUserRepository journal = new JournalUserRepository(journalPath);
+                journal.setSync(journalSync);
+                journal.setRetention(retention);
+                return journal;
+            case "none":
+                //stateless, consumers handle a missing repository
+                return null;
+            default:
+                throw new IllegalArgumentException("invalid audit store: " + store);
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package it.smartcommunitylab.dbsts.config;
 
 import it.smartcommunitylab.dbsts.db.DbManager;
+import it.smartcommunitylab.dbsts.db.JournalUserRepository;
+import it.smartcommunitylab.dbsts.db.RoleCatalog;
+import it.smartcommunitylab.dbsts.db.RoleReconciler;
+import it.smartcommunitylab.dbsts.db.UserPartitionManager;
+import it.smartcommunitylab.dbsts.db.UserRepository;
+import it.smartcommunitylab.dbsts.leader.LeaderElection;
+import it.smartcommunitylab.dbsts.limits.LimitsService;
+import it.smartcommunitylab.dbsts.monitor.CatalogMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
@@ -15,16 +25,115 @@ public class SchedulerConfig {
     @Autowired
     DbManager dbManager;
 
+    @Autowired
+    UserPartitionManager partitionManager;
+
+    @Autowired
+    RoleReconciler roleReconciler;
+
+    @Autowired(required = false)
+    UserRepository userRepository;
+
+    @Autowired
+    LimitsService limitsService;
+
+    @Autowired
+    LeaderElection leaderElection;
+
+    @Autowired
+    RoleCatalog roleCatalog;
+
+    @Autowired
+    CatalogMonitor catalogMonitor;
+
+    @Value("${spring.threads.virtual.enabled}")
+    boolean virtualThreads;
+
+    @Value("${sts.stream.pool-size}")
+    int streamPoolSize;
+
     @Bean
-    public ThreadPoolTaskScheduler taskScheduler() {
+    public TaskScheduler taskScheduler() {
+        //one thread per periodic task, long sweeps never delay the others
+        return scheduler("scheduled-task-", 8);
+    }
+
+    @Bean
+    public TaskScheduler leaderScheduler() {
+        //dedicated thread, leadership must be renewed even while tasks are busy
+        return scheduler("leader-heartbeat-", 1);
+    }
+
+    @Bean
+    public TaskScheduler streamScheduler() {
+        //credentials stream rotations, kept apart from background tasks
+        return scheduler("stream-rotation-", Math.max(streamPoolSize, 1));
+    }
+
+    @Scheduled(fixedDelayString = "${sts.leader.heartbeat}", initialDelay = 1000, scheduler = "leaderScheduler")
+    public void leaderHeartbeat() {
+        leaderElection.heartbeat();
+    }
+
+    private ThreadPoolTaskScheduler scheduler(String prefix, int poolSize) {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(5);
-        scheduler.setThreadNamePrefix("scheduled-task-");
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix(prefix);
+        if (virtualThreads) {
+            //pooled virtual threads, blocking calls don't pin a carrier
+            scheduler.setThreadFactory(Thread.ofVirtual().name(prefix, 0).factory());
+        }
         return scheduler;
     }
 
+    /*
+     * Cluster-singleton tasks, run only on the leader
+     */
+
     @Scheduled(fixedDelay = 180000, initialDelay = 10000)
     public void removeExpiredUsers() {
-        dbManager.cleanupExpired();
+        if (leaderElection.isLeader()) {
+            dbManager.cleanupExpired();
+        }
+    }
+
+    @Scheduled(fixedDelay = 3600000, initialDelay = 60000)
+    public void maintainPartitions() {
+        if (leaderElection.isLeader()) {
+            partitionManager.maintain();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sts.reconciler.interval}", initialDelay = 300000)
+    public void reconcileRoles() {
+        if (leaderElection.isLeader()) {
+            roleReconciler.reconcile();
+        }
+    }
+
+    /*
+     * Local tasks, run on every replica
+     */
+
+    @Scheduled(fixedDelayString = "${sts.roles.refresh}", initialDelay = 5000)
+    public void refreshRoles() {
+        roleCatalog.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${sts.monitor.interval}", initialDelay = 30000)
+    public void sampleCatalog() {
+        catalogMonitor.sample();
+    }
+
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void cleanupLimits() {
+        limitsService.cleanup();
+    }
+
+    @Scheduled(fixedDelayString = "${sts.audit.journal.compaction}", initialDelay = 600000)
+    public void compactJournal() {
+        if (userRepository instanceof JournalUserRepository journalRepository) {
+            journalRepository.compact();
+        }
     }
 }
@@ -16,6 +16,11 @@
 
 package it.smartcommunitylab.dbsts.config;
 
+import it.smartcommunitylab.dbsts.api.AuditEndpoint;
+import it.smartcommunitylab.dbsts.api.StsEndpoint;
+import jakarta.servlet.DispatcherType;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -40,12 +45,23 @@ public class SecurityConfig {
     @Value("${sts.client.client-secret}")
     private String clientSecret;
 
+    @Value("${sts.admin.client-id}")
+    private String adminId;
+
+    @Value("${sts.admin.client-secret}")
+    private String adminSecret;
+
     @Bean("securityFilterChain")
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         AntPathRequestMatcher reqMatcher = new AntPathRequestMatcher("/**");
         HttpSecurity securityChain = http
             .securityMatcher(reqMatcher)
             .authorizeHttpRequests(auth -> {
+                //async and error dispatches follow an already authorized request
+                auth.dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll();
+                //audit records and revocation span every identity, admin only
+                auth.requestMatchers(new AntPathRequestMatcher(AuditEndpoint.EXPORT_URL)).hasRole("ADMIN");
+                auth.requestMatchers(new AntPathRequestMatcher(StsEndpoint.REVOKE_URL)).hasRole("ADMIN");
                 auth.requestMatchers(reqMatcher).hasRole("CLIENT").anyRequest().authenticated();
             })
             // disable request cache
@@ -64,7 +80,7 @@ public class SecurityConfig {
             //TODO support additional methods
             securityChain
                 .httpBasic(basic -> basic.authenticationEntryPoint(new Http403ForbiddenEntryPoint()))
-                .userDetailsService(userDetailsService(clientId, clientSecret));
+                .userDetailsService(userDetailsService(clientId, clientSecret, adminId, adminSecret));
 
             //disable anonymous
             securityChain.anonymous(anon -> anon.disable());
@@ -89,12 +105,25 @@ public class SecurityConfig {
      * Basic auth provider
      */
     public static UserDetailsService userDetailsService(String username, String password) {
-        UserDetails client = User.withDefaultPasswordEncoder()
-            .username(username)
-            .password(password)
-            .roles("CLIENT")
-            .build();
+        return userDetailsService(username, password, null, null);
+    }
+
+    public static UserDetailsService userDetailsService(
+        String username,
+        String password,
+        String adminUsername,
+        String adminPassword
+    ) {
+        List<UserDetails> users = new ArrayList<>();
+        users.add(User.withDefaultPasswordEncoder().username(username).password(password).roles("CLIENT").build());
+
+        //optional admin client, for administrative endpoints only
+        if (StringUtils.hasText(adminUsername) && StringUtils.hasText(adminPassword)) {
+            users.add(
+                User.withDefaultPasswordEncoder().username(adminUsername).password(adminPassword).roles("ADMIN").build()
+            );
+        }
 
-        return new InMemoryUserDetailsManager(client);
+        return new InMemoryUserDetailsManager(users);
     }
 }
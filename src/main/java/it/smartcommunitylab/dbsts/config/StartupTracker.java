@@ -0,0 +1,53 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.config;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Track startup time, up to readiness and to the first successful exchange
+ */
+@Slf4j
+@Component
+public class StartupTracker {
+
+    private final AtomicBoolean exchanged = new AtomicBoolean(false);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady(ApplicationReadyEvent event) {
+        log.info(
+            "startup: ready {} ms after jvm start, context in {} ms",
+            uptime(),
+            event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : null
+        );
+    }
+
+    public void onExchange() {
+        if (!exchanged.get() && exchanged.compareAndSet(false, true)) {
+            log.info("startup: first successful exchange {} ms after jvm start", uptime());
+        }
+    }
+
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
@@ -16,7 +16,37 @@
 
 package it.smartcommunitylab.dbsts.db;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 public interface DbAdapter {
     DbUser create(DbUser user);
     void delete(DbUser username);
+    void delete(Collection<DbUser> users);
+    DbUser renew(DbUser user);
+
+    /*
+     * Stable roles: rotate the credentials of a persistent role, created when missing,
+     * and disable its login once expired
+     */
+    DbUser rotate(DbUser user);
+    void disable(DbUser user);
+
+    /*
+     * Catalog inspection: page users tagged by the adapter, able to log in,
+     * whose name matches the pattern, ordered by name
+     */
+    List<DbUser> list(String pattern, String after, int limit);
+    Set<String> exists(Collection<String> usernames);
+
+    /*
+     * Expired users tagged by the adapter, still able to log in, ordered by name
+     */
+    List<DbUser> expired(String after, int limit);
+
+    /*
+     * Roles which can be granted to users
+     */
+    Set<String> roles();
 }
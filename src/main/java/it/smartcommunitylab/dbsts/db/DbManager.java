@@ -16,18 +16,34 @@
 
 package it.smartcommunitylab.dbsts.db;
 
+import it.smartcommunitylab.dbsts.deadline.Deadline;
+import it.smartcommunitylab.dbsts.deadline.DeadlineExceededException;
 import it.smartcommunitylab.dbsts.jwt.WebIdentity;
+import it.smartcommunitylab.dbsts.leader.LeaderElection;
+import it.smartcommunitylab.dbsts.limits.LimitsService;
+import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,24 +57,47 @@ import org.springframework.util.StringUtils;
 @Slf4j
 public class DbManager implements InitializingBean {
 
+    //matches usernames produced by the username generator
+    public static final String USERNAME_PATTERN = "^[a-z]{4}_[a-z0-9]{8}$";
+
+    private static final int REVOKE_BATCH_SIZE = 100;
+
+    //credentials mode: a new role per exchange, or a persistent role per identity
+    public static final String MODE_EPHEMERAL = "ephemeral";
+    public static final String MODE_STABLE = "stable";
+
+    private static final char[] LETTERS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final char[] ALPHANUMERIC = "abcdefghijklmnopqrstuvwxyz1234567890".toCharArray();
+
     private final StringKeyGenerator pwdGenerator;
     private final StringKeyGenerator usernameGenerator;
 
     private DbAdapter adapter;
     private UserRepository userRepository;
+    private UserPartitionManager partitionManager;
+    private LimitsService limitsService;
+    private LeaderElection leaderElection;
+    private RoleCatalog roleCatalog;
     private String policy = "expire";
+    private String mode = MODE_EPHEMERAL;
 
     private Long defaultDuration = 3600l;
     private Set<String> defaultRoles = Collections.emptySet();
 
+    //revocation budget for cleanup: drops per second (0 unlimited) and off-peak windows
+    private int cleanupRate = 0;
+    private List<Window> cleanupWindows = Collections.emptyList();
+    //expired users overdue by more than this (seconds) are urgent, 0 disables
+    private long cleanupMaxDelay = 0;
+
     public DbManager(@Value("${sts.credentials.password-length}") Integer pwdLength) {
         Assert.notNull(pwdLength, "pwd length must be set");
 
         this.pwdGenerator = new HumanStringKeyGenerator(pwdLength.intValue());
         //use lowercase for usernames
         this.usernameGenerator = new CombinedKeyGenerator(
-            new HumanStringKeyGenerator(4, "abcdefghijklmnopqrstuvwxyz".toCharArray()),
-            new HumanStringKeyGenerator(8, "abcdefghijklmnopqrstuvwxyz1234567890".toCharArray())
+            new HumanStringKeyGenerator(4, LETTERS),
+            new HumanStringKeyGenerator(8, ALPHANUMERIC)
         );
     }
 
@@ -72,6 +111,26 @@ public class DbManager implements InitializingBean {
         this.userRepository = userRepository;
     }
 
+    @Autowired(required = false)
+    public void setLimitsService(LimitsService limitsService) {
+        this.limitsService = limitsService;
+    }
+
+    @Autowired(required = false)
+    public void setLeaderElection(LeaderElection leaderElection) {
+        this.leaderElection = leaderElection;
+    }
+
+    @Autowired(required = false)
+    public void setRoleCatalog(RoleCatalog roleCatalog) {
+        this.roleCatalog = roleCatalog;
+    }
+
+    @Autowired(required = false)
+    public void setPartitionManager(UserPartitionManager partitionManager) {
+        this.partitionManager = partitionManager;
+    }
+
     @Autowired
     public void setDuration(@Value("${sts.credentials.duration}") Long duration) {
         if (duration != null && duration > 120) {
@@ -86,6 +145,36 @@ public class DbManager implements InitializingBean {
         }
     }
 
+    @Autowired
+    public void setCleanupBudget(
+        @Value("${sts.cleanup.rate}") Integer rate,
+        @Value("${sts.cleanup.windows}") String windows,
+        @Value("${sts.cleanup.max-delay}") Long maxDelay
+    ) {
+        if (rate != null && rate >= 0) {
+            this.cleanupRate = rate;
+        }
+        if (maxDelay != null && maxDelay >= 0) {
+            this.cleanupMaxDelay = maxDelay;
+        }
+        if (StringUtils.hasText(windows)) {
+            //comma separated list of HH:mm-HH:mm, may wrap around midnight
+            List<Window> list = new ArrayList<>();
+            for (String w : StringUtils.commaDelimitedListToStringArray(windows)) {
+                String[] range = w.trim().split("-");
+                if (range.length != 2) {
+                    throw new IllegalArgumentException("invalid cleanup window: " + w);
+                }
+                try {
+                    list.add(new Window(LocalTime.parse(range[0].trim()), LocalTime.parse(range[1].trim())));
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("invalid cleanup window: " + w);
+                }
+            }
+            this.cleanupWindows = list;
+        }
+    }
+
     @Autowired
     public void setAdapter(DbAdapter adapter) {
         this.adapter = adapter;
@@ -96,7 +185,29 @@ public class DbManager implements InitializingBean {
         this.policy = policy;
     }
 
-    public DbUser exchange(@NotNull WebIdentity webIdentity, Collection<String> requestedRoles) {
+    @Autowired
+    public void setMode(@Value("${sts.credentials.mode}") String mode) {
+        if (StringUtils.hasText(mode)) {
+            if (!MODE_EPHEMERAL.equals(mode) && !MODE_STABLE.equals(mode)) {
+                throw new IllegalArgumentException("invalid credentials mode: " + mode);
+            }
+            this.mode = mode;
+        }
+    }
+
+    public boolean isStableMode() {
+        return MODE_STABLE.equals(mode);
+    }
+
+    public boolean isStateless() {
+        return userRepository == null;
+    }
+
+    public DbUser exchange(
+        @Nullable String client,
+        @NotNull WebIdentity webIdentity,
+        Collection<String> requestedRoles
+    ) {
         if (webIdentity == null) {
             throw new IllegalArgumentException("invalid web identity");
         }
@@ -123,11 +234,18 @@ public class DbManager implements InitializingBean {
             roles = new HashSet<>(requestedRoles);
         }
 
+        //reject unknown or forbidden roles before any DDL
+        if (roleCatalog != null) {
+            roleCatalog.check(client, roles);
+        }
+
         //database
         String database = webIdentity.getDatabase();
 
-        //generate secure credentials
-        String username = usernameGenerator.generateKey();
+        //generate secure credentials, stable roles are named after the identity
+        String username = isStableMode()
+            ? stableUsername(webIdentity, database, roles)
+            : usernameGenerator.generateKey();
         String password = pwdGenerator.generateKey();
 
         //convert
@@ -137,10 +255,41 @@ public class DbManager implements InitializingBean {
             .password(password)
             .roles(roles)
             .validUntil(expiration)
+            .webIssuer(webIdentity.getIssuer())
+            .webUser(webIdentity.getUsername())
             .build();
 
+        //client may have given up already, before any DDL
+        Deadline.check();
+
+        //reserve quota for identity
+        if (limitsService != null) {
+            limitsService.acquire(webIdentity.getIssuer(), webIdentity.getUsername());
+        }
+
         //create in database
-        user = adapter.create(user);
+        DbUser created = null;
+        try {
+            created = isStableMode() ? adapter.rotate(user) : adapter.create(user);
+            //nobody will receive credentials issued past the deadline
+            Deadline.check();
+        } catch (RuntimeException e) {
+            if (limitsService != null) {
+                limitsService.release(webIdentity.getIssuer(), webIdentity.getUsername());
+            }
+            if (created != null) {
+                if (isStableMode()) {
+                    lock(created);
+                } else {
+                    compensate(created);
+                }
+            }
+            if (Deadline.isExceeded() && !(e instanceof DeadlineExceededException)) {
+                throw new DeadlineExceededException(e);
+            }
+            throw e;
+        }
+        user = created;
 
         log.debug("created db user {}", user.getUsername());
         if (log.isTraceEnabled()) {
@@ -148,6 +297,15 @@ public class DbManager implements InitializingBean {
         }
 
         if (userRepository != null) {
+            if (isStableMode()) {
+                //rotation replaced the password, previous credentials are gone
+                User previous = userRepository.findActiveByDbUser(user.getUsername());
+                if (previous != null) {
+                    log.debug("supersede user {} for {}", previous.getId(), previous.getDbUser());
+                    retire(previous);
+                }
+            }
+
             //store user
             User u = User.builder()
                 .id(UUID.randomUUID().toString())
@@ -164,13 +322,123 @@ public class DbManager implements InitializingBean {
             if (log.isTraceEnabled()) {
                 log.trace("u: {}", u);
             }
-            userRepository.store(u);
+            try {
+                userRepository.store(u);
+            } catch (RuntimeException e) {
+                //untracked credentials would hold the slot and never be cleaned up
+                if (limitsService != null) {
+                    limitsService.release(webIdentity.getIssuer(), webIdentity.getUsername());
+                }
+                if (isStableMode()) {
+                    lock(user);
+                } else {
+                    compensate(user);
+                }
+                throw e;
+            }
         }
 
         //return
         return user;
     }
 
+    public DbUser renew(@NotNull WebIdentity webIdentity, @NotNull String username) {
+        if (webIdentity == null) {
+            throw new IllegalArgumentException("invalid web identity");
+        }
+        if (!StringUtils.hasText(username)) {
+            throw new IllegalArgumentException("invalid db user");
+        }
+        if (userRepository == null) {
+            throw new IllegalStateException("renewal requires a user repository");
+        }
+
+        log.info("renew db user for webIdentity");
+
+        //credential must be active and owned by the same web identity
+        User u = userRepository.findActiveByDbUser(username);
+        Instant now = Instant.now();
+        if (
+            u == null ||
+            u.getDbValidUntil() == null ||
+            !u.getDbValidUntil().toInstant().isAfter(now) ||
+            !Objects.equals(u.getWebIssuer(), webIdentity.getIssuer()) ||
+            !Objects.equals(u.getWebUser(), webIdentity.getUsername())
+        ) {
+            throw new IllegalArgumentException("invalid or expired db user");
+        }
+
+        Instant expiration = webIdentity.getExpiresAt() != null
+            ? webIdentity.getExpiresAt()
+            : now.plus(defaultDuration, ChronoUnit.SECONDS);
+
+        DbUser user = DbUser.builder()
+            .database(u.getDbDatabase())
+            .username(u.getDbUser())
+            .roles(u.getDbRoles() != null ? Arrays.asList(u.getDbRoles()) : null)
+            .validUntil(expiration)
+            .build();
+
+        //extend validity in database, a single statement
+        user = adapter.renew(user);
+
+        log.debug("renew user {} until {}", u.getId(), expiration);
+        userRepository.renew(u.getId(), Date.from(expiration));
+
+        return user;
+    }
+
+    /**
+     * Revoke all active credentials for a web identity and/or a database.
+     * Users are read in pages via index and dropped with batched statements.
+     */
+    public int revoke(@Nullable String webIssuer, @Nullable String webUser, @Nullable String database) {
+        if (!StringUtils.hasText(webUser) && !StringUtils.hasText(database)) {
+            throw new IllegalArgumentException("invalid request: missing web user or database");
+        }
+        if (userRepository == null) {
+            throw new IllegalStateException("revocation requires a user repository");
+        }
+
+        log.info("revoke db users for web user {} database {}", webUser, database);
+
+        int count = 0;
+        String after = null;
+        List<User> page;
+        do {
+            page = userRepository.findActiveByIdentity(webIssuer, webUser, database, after, REVOKE_BATCH_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            after = page.get(page.size() - 1).getId();
+            List<DbUser> dbUsers = page.stream().map(this::toDbUser).toList();
+
+            log.debug("revoke {} db users", dbUsers.size());
+            adapter.delete(dbUsers);
+
+            //batch failures fall back to single drops, keep records of roles left behind
+            Set<String> remaining = adapter.exists(dbUsers.stream().map(DbUser::getUsername).toList());
+            if (!remaining.isEmpty()) {
+                log.warn("revoke failed for {} db users, kept active", remaining.size());
+            }
+            List<User> revoked = page.stream().filter(u -> !remaining.contains(u.getDbUser())).toList();
+            List<String> ids = revoked.stream().map(User::getId).toList();
+            revoked.forEach(this::release);
+
+            if (isExpirePolicy()) {
+                userRepository.expire(ids);
+            } else {
+                userRepository.remove(ids);
+            }
+
+            count += revoked.size();
+        } while (page.size() == REVOKE_BATCH_SIZE);
+
+        log.debug("revoked {} db users", count);
+        return count;
+    }
+
     public void delete(DbUser user) {
         if (user != null && StringUtils.hasText(user.getUsername())) {
             log.debug("delete db user {}", user.getUsername());
@@ -179,38 +447,250 @@ public class DbManager implements InitializingBean {
         }
     }
 
+    /**
+     * Drop expired users within the revocation budget. Logins are already blocked by
+     * VALID UNTIL, so the bulk of the drops is paced and, when windows are configured,
+     * run only off-peak. Urgent users (no validity, or overdue past the max delay) are
+     * dropped first and always, explicit revocations never go through this path.
+     * In stable mode roles are kept and only their login is disabled.
+     * Without a user repository (stateless) expired roles are found via their tags in the catalog.
+     */
     public void cleanupExpired() {
         log.debug("cleanup expired users");
         if (userRepository != null) {
-            List<User> users = userRepository.findExpired();
-            users.forEach(user -> {
-                log.debug("cleanup {} db user {}", user.getId(), user.getDbUser());
-                if (log.isTraceEnabled()) {
-                    log.trace("user: {}", user);
-                }
-                //remove from adapter
+            sweep(
+                userRepository.findExpired(),
+                user -> user.getDbValidUntil() != null ? user.getDbValidUntil().toInstant() : null,
+                this::cleanup
+            );
+        } else {
+            sweep(findExpiredRoles(), DbUser::getValidUntil, this::cleanupRole);
+        }
+    }
+
+    private <T> void sweep(List<T> users, Function<T, Instant> validUntil, Consumer<T> action) {
+        Instant now = Instant.now();
+
+        List<T> urgent = new ArrayList<>();
+        List<T> regular = new ArrayList<>();
+        users.forEach(user -> (isUrgent(validUntil.apply(user), now) ? urgent : regular).add(user));
+
+        //urgent items jump the queue, unpaced
+        for (T user : urgent) {
+            if (!isLeader()) {
+                return;
+            }
+
+            action.accept(user);
+        }
+
+        //oldest first, so a window closing mid-sweep leaves the most recent behind
+        regular.sort(Comparator.comparing(validUntil));
+        int count = 0;
+        for (T user : regular) {
+            if (!isLeader()) {
+                return;
+            }
+
+            if (!isOffPeak(LocalTime.now())) {
+                log.debug("cleanup deferred to off-peak for {} expired users", regular.size() - count);
+                break;
+            }
+
+            if (count > 0 && cleanupRate > 0) {
                 try {
-                    DbUser dbUser = DbUser.builder()
-                        .database(user.getDbDatabase())
-                        .username(user.getDbUser())
-                        .roles(user.getDbRoles() != null ? Arrays.asList(user.getDbRoles()) : null)
-                        .build();
-
-                    adapter.delete(dbUser);
-                } catch (Exception e) {
-                    log.error("Error removing user: {}", e);
+                    Thread.sleep(1000l / cleanupRate);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
+            }
 
-                if ("expire".equals(policy)) {
-                    //expire
-                    log.debug("expire user {}", user.getId());
-                    userRepository.expire(user.getId());
-                } else {
-                    //delete
-                    log.debug("remove user {}", user.getId());
-                    userRepository.remove(user.getId());
-                }
-            });
+            action.accept(user);
+            count++;
+        }
+    }
+
+    private boolean isLeader() {
+        //a sweep can outlast leadership, another replica may be sweeping already
+        if (leaderElection != null && !leaderElection.isLeader()) {
+            log.info("leadership lost, stop cleanup");
+            return false;
+        }
+
+        return true;
+    }
+
+    private List<DbUser> findExpiredRoles() {
+        List<DbUser> users = new ArrayList<>();
+        String after = null;
+        List<DbUser> page;
+        do {
+            if (!isLeader()) {
+                return List.of();
+            }
+
+            page = adapter.expired(after, REVOKE_BATCH_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            after = page.get(page.size() - 1).getUsername();
+            users.addAll(page);
+        } while (page.size() == REVOKE_BATCH_SIZE);
+
+        return users;
+    }
+
+    private void cleanupRole(DbUser user) {
+        log.debug("cleanup db user {} of {}", user.getUsername(), user.getWebUser());
+        try {
+            if (isStableMode()) {
+                adapter.disable(user);
+            } else {
+                adapter.delete(user);
+            }
+        } catch (Exception e) {
+            log.error("Error removing user: {}", e);
+        }
+
+        if (limitsService != null && user.getWebUser() != null) {
+            limitsService.release(user.getWebIssuer(), user.getWebUser());
+        }
+    }
+
+    private void cleanup(User user) {
+        log.debug("cleanup {} db user {}", user.getId(), user.getDbUser());
+        if (log.isTraceEnabled()) {
+            log.trace("user: {}", user);
+        }
+        //remove from adapter, stable roles are kept with login disabled
+        try {
+            if (isStableMode()) {
+                adapter.disable(toDbUser(user));
+            } else {
+                adapter.delete(toDbUser(user));
+            }
+        } catch (Exception e) {
+            log.error("Error removing user: {}", e);
+        }
+        retire(user);
+    }
+
+    private void compensate(DbUser user) {
+        log.debug("drop abandoned db user {}", user.getUsername());
+        Deadline.detached(() -> {
+            try {
+                adapter.delete(user);
+            } catch (RuntimeException e) {
+                log.error("Error removing abandoned user {}: {}", user.getUsername(), e.getMessage());
+            }
+        });
+    }
+
+    private void lock(DbUser user) {
+        //password rotated but never delivered, expire now and disable login
+        log.debug("disable undelivered db user {}", user.getUsername());
+        Deadline.detached(() -> {
+            try {
+                adapter.renew(
+                    DbUser.builder()
+                        .database(user.getDatabase())
+                        .username(user.getUsername())
+                        //well in the past, clock skew with the server can't keep it valid
+                        .validUntil(Instant.EPOCH)
+                        .build()
+                );
+                adapter.disable(user);
+            } catch (RuntimeException e) {
+                log.error("Error disabling undelivered user {}: {}", user.getUsername(), e.getMessage());
+            }
+        });
+    }
+
+    private void retire(User user) {
+        release(user);
+
+        if (isExpirePolicy()) {
+            //expire
+            log.debug("expire user {}", user.getId());
+            userRepository.expire(user.getId());
+        } else {
+            //delete
+            log.debug("remove user {}", user.getId());
+            userRepository.remove(user.getId());
+        }
+    }
+
+    /*
+     * Derive a name with the same shape as generated ones from the identity, the database
+     * and the roles, so that each combination maps to a single persistent role
+     */
+    private String stableUsername(WebIdentity webIdentity, String database, Set<String> roles) {
+        String key = String.join(
+            "\n",
+            String.valueOf(webIdentity.getIssuer()),
+            String.valueOf(webIdentity.getUsername()),
+            String.valueOf(database),
+            roles != null ? String.join(",", new TreeSet<>(roles)) : ""
+        );
+
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("sha-256 not available");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            sb.append(LETTERS[(hash[i] & 0xff) % LETTERS.length]);
+        }
+        sb.append('_');
+        for (int i = 4; i < 12; i++) {
+            sb.append(ALPHANUMERIC[(hash[i] & 0xff) % ALPHANUMERIC.length]);
+        }
+
+        return sb.toString();
+    }
+
+    private boolean isUrgent(Instant validUntil, Instant now) {
+        //without validity the role could still log in
+        if (validUntil == null) {
+            return true;
+        }
+
+        return cleanupMaxDelay > 0 && validUntil.isBefore(now.minus(cleanupMaxDelay, ChronoUnit.SECONDS));
+    }
+
+    private boolean isOffPeak(LocalTime time) {
+        return cleanupWindows.isEmpty() || cleanupWindows.stream().anyMatch(w -> w.contains(time));
+    }
+
+    private void release(User user) {
+        if (limitsService != null) {
+            limitsService.release(user.getWebIssuer(), user.getWebUser());
+        }
+    }
+
+    private boolean isExpirePolicy() {
+        //partitioned records are purged by dropping whole partitions
+        return "expire".equals(policy) || (partitionManager != null && partitionManager.isEnabled());
+    }
+
+    private DbUser toDbUser(User user) {
+        return DbUser.builder()
+            .database(user.getDbDatabase())
+            .username(user.getDbUser())
+            .roles(user.getDbRoles() != null ? Arrays.asList(user.getDbRoles()) : null)
+            .build();
+    }
+
+    private record Window(LocalTime from, LocalTime to) {
+        boolean contains(LocalTime time) {
+            return from.isBefore(to)
+                ? !time.isBefore(from) && time.isBefore(to)
+                : !time.isBefore(from) || time.isBefore(to);
         }
     }
 }
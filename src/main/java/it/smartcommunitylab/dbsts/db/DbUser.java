@@ -19,6 +19,7 @@ package it.smartcommunitylab.dbsts.db;
 
 import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -28,7 +29,7 @@ import lombok.ToString;
 
 @Getter
 @Setter
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
@@ -44,4 +45,11 @@ public class DbUser {
     private Collection<String> roles;
 
     private Instant validUntil;
+
+    //web identity the user was issued to
+    private String webIssuer;
+    private String webUser;
+
+    //replicas (host:port) which already replayed the role
+    private List<String> replicas;
 }
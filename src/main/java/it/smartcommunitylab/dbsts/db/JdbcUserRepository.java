@@ -0,0 +1,318 @@
+package it.smartcommunitylab.dbsts.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+@Slf4j
+public class JdbcUserRepository implements UserRepository {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO users (id, created_at, web_issuer, web_user, db_database, db_user, db_roles, valid_until, _status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_EXPIRED = "SELECT * FROM users WHERE valid_until < ? AND _status = 'active'";
+    private static final String DELETE_SQL = "DELETE FROM users WHERE id = ?";
+    private static final String EXPIRE_SQL = "UPDATE users SET _status = 'inactive' WHERE id = ?";
+    private static final String SELECT_ALL = "SELECT * FROM users";
+    private static final String SELECT_ACTIVE_DB_USER = "SELECT * FROM users WHERE db_user = ? AND _status = 'active'";
+    private static final String EXPIRE_ALL_SQL = "UPDATE users SET _status = 'inactive' WHERE id IN (%s)";
+    private static final String DELETE_ALL_SQL = "DELETE FROM users WHERE id IN (%s)";
+    private static final String COUNT_ACTIVE_BY_IDENTITY =
+        "SELECT COUNT(*) FROM users WHERE _status = 'active' AND web_user = ? AND web_issuer = ?";
+    private static final String COUNT_ACTIVE_BY_USER =
+        "SELECT COUNT(*) FROM users WHERE _status = 'active' AND web_user = ? AND web_issuer IS NULL";
+    private static final String RENEW_SQL = "UPDATE users SET valid_until = ? WHERE id = ?";
+    private static final String SELECT_ACTIVE_PAGE =
+        "SELECT * FROM users WHERE _status = 'active' AND id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_ACTIVE_BY = "SELECT * FROM users WHERE _status = 'active' AND id > ?";
+    private static final String SELECT_ACTIVE_DB_USERS =
+        "SELECT DISTINCT db_user FROM users WHERE _status = 'active' AND db_user IN (%s)";
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private RowMapper<User> rowMapper;
+
+    //dedicated template for cursor based reads
+    private final JdbcTemplate streamTemplate;
+    private final TransactionTemplate streamTransaction;
+
+    public JdbcUserRepository(JdbcTemplate template) {
+        Assert.notNull(template, "jdbc is required to store users");
+        this.jdbcTemplate = template;
+
+        this.rowMapper = new UserRowMapper();
+
+        //postgresql uses a server side cursor only with a fetch size inside a transaction
+        DataSource dataSource = template.getDataSource();
+        this.streamTemplate = new JdbcTemplate(dataSource);
+        this.streamTemplate.setFetchSize(STREAM_FETCH_SIZE);
+        this.streamTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.streamTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public void store(User user) {
+        Timestamp now = new Timestamp(Date.from(Instant.now()).getTime());
+        String dbRoles = user.getDbRoles() != null ? StringUtils.arrayToCommaDelimitedString(user.getDbRoles()) : null;
+
+        jdbcTemplate.update(
+            INSERT_SQL,
+            new Object[] {
+                user.getId(),
+                now,
+                user.getWebIssuer(),
+                user.getWebUser(),
+                user.getDbDatabase(),
+                user.getDbUser(),
+                dbRoles,
+                user.getDbValidUntil(),
+                "active",
+            },
+            new int[] {
+                Types.VARCHAR,
+                Types.TIMESTAMP,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.TIMESTAMP,
+                Types.VARCHAR,
+            }
+        );
+    }
+
+    @Override
+    public void expire(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        jdbcTemplate.update(EXPIRE_SQL, id);
+    }
+
+    @Override
+    public void remove(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        jdbcTemplate.update(DELETE_SQL, id);
+    }
+
+    @Override
+    public void expire(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.update(String.format(EXPIRE_ALL_SQL, placeholders(ids.size())), ids.toArray());
+    }
+
+    @Override
+    public void remove(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.update(String.format(DELETE_ALL_SQL, placeholders(ids.size())), ids.toArray());
+    }
+
+    @Override
+    public void renew(String id, Date validUntil) {
+        if (id == null || validUntil == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        jdbcTemplate.update(
+            RENEW_SQL,
+            new Object[] { validUntil, id },
+            new int[] { Types.TIMESTAMP, Types.VARCHAR }
+        );
+    }
+
+    @Override
+    public User findActiveByDbUser(String dbUser) {
+        if (dbUser == null) {
+            throw new IllegalArgumentException("invalid db user");
+        }
+
+        List<User> users = jdbcTemplate.query(SELECT_ACTIVE_DB_USER, rowMapper, dbUser);
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    @Override
+    public int countActiveByIdentity(@Nullable String webIssuer, String webUser) {
+        if (webUser == null) {
+            throw new IllegalArgumentException("invalid web user");
+        }
+
+        Integer count = webIssuer != null
+            ? jdbcTemplate.queryForObject(COUNT_ACTIVE_BY_IDENTITY, Integer.class, webUser, webIssuer)
+            : jdbcTemplate.queryForObject(COUNT_ACTIVE_BY_USER, Integer.class, webUser);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public List<User> findExpired() {
+        Timestamp now = new Timestamp(Date.from(Instant.now()).getTime());
+
+        return jdbcTemplate.query(SELECT_EXPIRED, new Object[] { now }, new int[] { Types.TIMESTAMP }, rowMapper);
+    }
+
+    @Override
+    public List<User> findActive(@Nullable String after, int limit) {
+        return jdbcTemplate.query(SELECT_ACTIVE_PAGE, rowMapper, after != null ? after : "", limit);
+    }
+
+    @Override
+    public Set<String> findActiveDbUsers(Collection<String> dbUsers) {
+        if (dbUsers == null || dbUsers.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        String sql = String.format(SELECT_ACTIVE_DB_USERS, placeholders(dbUsers.size()));
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, dbUsers.toArray()));
+    }
+
+    /**
+     * Page active users for the given identity and/or database, ordered by id
+     */
+    @Override
+    public List<User> findActiveByIdentity(
+        @Nullable String webIssuer,
+        @Nullable String webUser,
+        @Nullable String database,
+        @Nullable String after,
+        int limit
+    ) {
+        StringBuilder sql = new StringBuilder(SELECT_ACTIVE_BY);
+        List<Object> params = new ArrayList<>();
+        params.add(after != null ? after : "");
+
+        if (webIssuer != null) {
+            sql.append(" AND web_issuer = ?");
+            params.add(webIssuer);
+        }
+        if (webUser != null) {
+            sql.append(" AND web_user = ?");
+            params.add(webUser);
+        }
+        if (database != null) {
+            sql.append(" AND db_database = ?");
+            params.add(database);
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), rowMapper, params.toArray());
+    }
+
+    /**
+     * Stream all users matching the (optional) filters, ordered by creation.
+     * Rows are fetched via cursor and handed to the consumer one by one, so
+     * memory usage does not depend on the number of matches.
+     */
+    @Override
+    public void stream(
+        @Nullable Instant from,
+        @Nullable Instant to,
+        @Nullable String webUser,
+        @Nullable String database,
+        Consumer<User> consumer
+    ) {
+        Assert.notNull(consumer, "consumer is required");
+
+        StringBuilder sql = new StringBuilder(SELECT_ALL);
+        List<Object> params = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+
+        if (from != null) {
+            conditions.add("created_at >= ?");
+            params.add(new Timestamp(from.toEpochMilli()));
+            types.add(Types.TIMESTAMP);
+        }
+        if (to != null) {
+            conditions.add("created_at < ?");
+            params.add(new Timestamp(to.toEpochMilli()));
+            types.add(Types.TIMESTAMP);
+        }
+        if (StringUtils.hasText(webUser)) {
+            conditions.add("web_user = ?");
+            params.add(webUser);
+            types.add(Types.VARCHAR);
+        }
+        if (StringUtils.hasText(database)) {
+            conditions.add("db_database = ?");
+            params.add(database);
+            types.add(Types.VARCHAR);
+        }
+
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY created_at");
+
+        int[] argTypes = types.stream().mapToInt(Integer::intValue).toArray();
+        streamTransaction.executeWithoutResult(status ->
+            streamTemplate.query(
+                sql.toString(),
+                params.toArray(),
+                argTypes,
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow()))
+            )
+        );
+    }
+
+    private static String placeholders(int size) {
+        return String.join(",", Collections.nCopies(size, "?"));
+    }
+
+    private class UserRowMapper implements RowMapper<User> {
+
+        @Override
+        public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+            String id = rs.getString("id");
+            if (id == null) {
+                return null;
+            }
+
+            String roles = rs.getString("db_roles");
+
+            return User.builder()
+                .id(id)
+                .createdAt(rs.getTimestamp("created_at"))
+                //web identity
+                .webIssuer(rs.getString("web_issuer"))
+                .webUser(rs.getString("web_user"))
+                //db
+                .dbDatabase(rs.getString("db_database"))
+                .dbUser(rs.getString("db_user"))
+                .dbRoles(roles != null ? StringUtils.commaDelimitedListToStringArray(roles) : null)
+                .dbValidUntil(rs.getTimestamp("valid_until"))
+                .status(rs.getString("_status"))
+                .build();
+        }
+    }
+}
@@ -0,0 +1,645 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.db;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Embedded user store backed by an append-only journal file.
+ * Every change appends a full record, the journal is replayed via memory
+ * map on startup to rebuild the in-memory indexes of active users and
+ * expirations. Compaction rewrites the journal keeping only the latest
+ * record of each user, dropping removed and retention-expired ones.
+ */
+@Slf4j
+public class JournalUserRepository implements UserRepository, InitializingBean, DisposableBean {
+
+    private static final String OP_PUT = "put";
+    private static final String OP_DEL = "del";
+
+    private static final byte NEWLINE = '\n';
+    //max size of a single mapped segment, bounds record size
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final ObjectMapper mapper;
+
+    //appends are serialized, compaction excludes scans
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private boolean sync = false;
+    //months of inactive records to keep on compaction, 0 keeps forever
+    private int retention = 0;
+
+    //offset of the latest record for each user
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+    //active users indexes
+    private final ConcurrentSkipListMap<String, User> active = new ConcurrentSkipListMap<>();
+    private final Map<String, String> activeByDbUser = new ConcurrentHashMap<>();
+    //web user, then issuer (empty when missing), to sorted ids
+    private final Map<String, Map<String, ConcurrentSkipListSet<String>>> activeByIdentity = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Expiry> expiry = new ConcurrentSkipListSet<>();
+
+    public JournalUserRepository(String path) {
+        Assert.hasText(path, "journal path is required");
+        this.path = Paths.get(path);
+
+        this.mapper = new ObjectMapper();
+        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    public void setRetention(Integer retention) {
+        if (retention != null && retention >= 0) {
+            this.retention = retention;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        //rebuild indexes from journal
+        long end = 0;
+        if (Files.exists(path)) {
+            try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                end = scan(in, 0, in.size(), this::apply);
+            }
+        }
+
+        this.channel = open();
+        if (end < channel.size()) {
+            //drop a partial record left by an interrupted write
+            log.warn("truncate journal {} at {} from {}", path, end, channel.size());
+            channel.truncate(end);
+        }
+
+        log.info("journal {} loaded with {} users, {} active", path, offsets.size(), active.size());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void store(User user) {
+        User u = User.builder()
+            .id(user.getId())
+            .createdAt(Date.from(Instant.now()))
+            .webIssuer(user.getWebIssuer())
+            .webUser(user.getWebUser())
+            .dbDatabase(user.getDbDatabase())
+            .dbUser(user.getDbUser())
+            .dbRoles(user.getDbRoles())
+            .dbValidUntil(user.getDbValidUntil())
+            .status("active")
+            .build();
+
+        append(new JournalRecord(OP_PUT, u.getId(), u));
+    }
+
+    @Override
+    public void expire(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        //read and write under the same lock, concurrent updates are not lost
+        appendLock.lock();
+        try {
+            User user = active.get(id);
+            if (user != null) {
+                append(new JournalRecord(OP_PUT, id, copy(user, user.getDbValidUntil(), "inactive")));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void expire(Collection<String> ids) {
+        if (ids != null) {
+            ids.forEach(this::expire);
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        if (offsets.containsKey(id)) {
+            append(new JournalRecord(OP_DEL, id, null));
+        }
+    }
+
+    @Override
+    public void remove(Collection<String> ids) {
+        if (ids != null) {
+            ids.forEach(this::remove);
+        }
+    }
+
+    @Override
+    public void renew(String id, Date validUntil) {
+        if (id == null || validUntil == null) {
+            throw new IllegalArgumentException("invalid id");
+        }
+
+        appendLock.lock();
+        try {
+            User user = active.get(id);
+            if (user != null) {
+                append(new JournalRecord(OP_PUT, id, copy(user, validUntil, user.getStatus())));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public User findActiveByDbUser(String dbUser) {
+        if (dbUser == null) {
+            throw new IllegalArgumentException("invalid db user");
+        }
+
+        String id = activeByDbUser.get(dbUser);
+        return id != null ? active.get(id) : null;
+    }
+
+    @Override
+    public int countActiveByIdentity(@Nullable String webIssuer, String webUser) {
+        if (webUser == null) {
+            throw new IllegalArgumentException("invalid web user");
+        }
+
+        Map<String, ConcurrentSkipListSet<String>> byIssuer = activeByIdentity.get(webUser);
+        Set<String> ids = byIssuer != null ? byIssuer.get(issuerKey(webIssuer)) : null;
+        return ids != null ? ids.size() : 0;
+    }
+
+    @Override
+    public List<User> findExpired() {
+        //entries strictly before now
+        return expiry
+            .headSet(new Expiry(Instant.now().toEpochMilli(), ""))
+            .stream()
+            .map(e -> active.get(e.id()))
+            .filter(Objects::nonNull)
+            .toList();
+    }
+
+    @Override
+    public List<User> findActive(@Nullable String after, int limit) {
+        return (after != null ? active.tailMap(after, false) : active).values().stream().limit(limit).toList();
+    }
+
+    @Override
+    public Set<String> findActiveDbUsers(Collection<String> dbUsers) {
+        if (dbUsers == null) {
+            return Set.of();
+        }
+
+        return dbUsers.stream().filter(activeByDbUser::containsKey).collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<User> findActiveByIdentity(
+        @Nullable String webIssuer,
+        @Nullable String webUser,
+        @Nullable String database,
+        @Nullable String after,
+        int limit
+    ) {
+        if (webUser != null) {
+            //via identity index, any issuer when missing
+            Map<String, ConcurrentSkipListSet<String>> byIssuer = activeByIdentity.getOrDefault(webUser, Map.of());
+            NavigableSet<String> ids = new TreeSet<>();
+            if (webIssuer != null) {
+                ids.addAll(byIssuer.getOrDefault(webIssuer, new ConcurrentSkipListSet<>()));
+            } else {
+                byIssuer.values().forEach(ids::addAll);
+            }
+
+            return (after != null ? ids.tailSet(after, false) : ids).stream()
+                .map(active::get)
+                .filter(Objects::nonNull)
+                .filter(u -> database == null || database.equals(u.getDbDatabase()))
+                .limit(limit)
+                .toList();
+        }
+
+        return (after != null ? active.tailMap(after, false) : active).values()
+            .stream()
+            .filter(u -> webIssuer == null || webIssuer.equals(u.getWebIssuer()))
+            .filter(u -> webUser == null || webUser.equals(u.getWebUser()))
+            .filter(u -> database == null || database.equals(u.getDbDatabase()))
+            .limit(limit)
+            .toList();
+    }
+
+    /**
+     * Stream users in journal order. Only the latest record of each user is
+     * emitted; users updated during the export may be emitted twice.
+     */
+    @Override
+    public void stream(
+        @Nullable Instant from,
+        @Nullable Instant to,
+        @Nullable String webUser,
+        @Nullable String database,
+        Consumer<User> consumer
+    ) {
+        Assert.notNull(consumer, "consumer is required");
+
+        compactionLock.readLock().lock();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            long end;
+            //follow appends made while streaming
+            while (position < (end = in.size())) {
+                long next = scan(
+                    in,
+                    position,
+                    end,
+                    (offset, record) -> {
+                        if (!OP_PUT.equals(record.op()) || !Long.valueOf(offset).equals(offsets.get(record.id()))) {
+                            return;
+                        }
+
+                        User u = record.user();
+                        Instant createdAt = u.getCreatedAt() != null ? u.getCreatedAt().toInstant() : null;
+                        if (from != null && (createdAt == null || createdAt.isBefore(from))) {
+                            return;
+                        }
+                        if (to != null && (createdAt == null || !createdAt.isBefore(to))) {
+                            return;
+                        }
+                        if (StringUtils.hasText(webUser) && !webUser.equals(u.getWebUser())) {
+                            return;
+                        }
+                        if (StringUtils.hasText(database) && !database.equals(u.getDbDatabase())) {
+                            return;
+                        }
+
+                        consumer.accept(u);
+                    }
+                );
+
+                if (next == position) {
+                    //partial record being written
+                    break;
+                }
+                position = next;
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Error reading journal", e);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the journal keeping only the latest record of each user.
+     * Appends are blocked only while copying records written during the rewrite.
+     */
+    public void compact() {
+        log.debug("compact journal {}", path);
+
+        compactionLock.writeLock().lock();
+        try {
+            Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+            Date cutoff = retention > 0
+                ? Date.from(ZonedDateTime.now(ZoneOffset.UTC).minusMonths(retention).toInstant())
+                : null;
+
+            //consistent snapshot of the journal end and latest offsets
+            long end;
+            Map<String, Long> snapshot;
+            appendLock.lock();
+            try {
+                end = channel.size();
+                snapshot = new HashMap<>(offsets);
+            } finally {
+                appendLock.unlock();
+            }
+
+            Map<String, Long> compacted = new HashMap<>();
+            long[] size = { 0 };
+            try (
+                FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(
+                    tmp,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+                )
+            ) {
+                scan(
+                    in,
+                    0,
+                    end,
+                    (offset, record) -> {
+                        if (!OP_PUT.equals(record.op()) || !Long.valueOf(offset).equals(snapshot.get(record.id()))) {
+                            return;
+                        }
+
+                        User u = record.user();
+                        if (
+                            cutoff != null &&
+                            !"active".equals(u.getStatus()) &&
+                            u.getCreatedAt() != null &&
+                            u.getCreatedAt().before(cutoff)
+                        ) {
+                            //expired by retention
+                            return;
+                        }
+
+                        byte[] bytes = serialize(record);
+                        write(out, bytes);
+                        compacted.put(record.id(), size[0]);
+                        size[0] += bytes.length;
+                    }
+                );
+
+                appendLock.lock();
+                try {
+                    //copy records appended meanwhile as they are, offsets shift by the same amount
+                    long tail = channel.size();
+                    long position = end;
+                    while (position < tail) {
+                        position += in.transferTo(position, tail - position, out);
+                    }
+                    out.force(true);
+
+                    long shift = size[0] - end;
+                    Map<String, Long> updated = new HashMap<>();
+                    offsets.forEach((id, offset) -> {
+                        Long o = offset >= end ? Long.valueOf(offset + shift) : compacted.get(id);
+                        if (o != null) {
+                            updated.put(id, o);
+                        }
+                    });
+
+                    channel.close();
+                    try {
+                        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                        //new journal when moved, the original one otherwise
+                        channel = open();
+                    }
+
+                    int dropped = offsets.size() - updated.size();
+                    offsets.clear();
+                    offsets.putAll(updated);
+                    log.info("compacted journal {} to {} users, dropped {}", path, updated.size(), dropped);
+                } finally {
+                    appendLock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Error compacting journal", e);
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    private void append(JournalRecord record) {
+        appendLock.lock();
+        try {
+            long offset = channel.size();
+            write(channel, serialize(record));
+            if (sync) {
+                channel.force(false);
+            }
+
+            apply(offset, record);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Error writing journal", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void apply(long offset, JournalRecord record) {
+        String id = record.id();
+        if (id == null) {
+            return;
+        }
+
+        unindex(id);
+        if (OP_DEL.equals(record.op())) {
+            offsets.remove(id);
+            return;
+        }
+
+        offsets.put(id, offset);
+        User user = record.user();
+        if (user != null && "active".equals(user.getStatus())) {
+            active.put(id, user);
+            if (user.getDbUser() != null) {
+                activeByDbUser.put(user.getDbUser(), id);
+            }
+            if (user.getWebUser() != null) {
+                activeByIdentity
+                    .computeIfAbsent(user.getWebUser(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(issuerKey(user.getWebIssuer()), k -> new ConcurrentSkipListSet<>())
+                    .add(id);
+            }
+            if (user.getDbValidUntil() != null) {
+                expiry.add(new Expiry(user.getDbValidUntil().getTime(), id));
+            }
+        }
+    }
+
+    private void unindex(String id) {
+        User prev = active.remove(id);
+        if (prev != null) {
+            if (prev.getDbUser() != null) {
+                activeByDbUser.remove(prev.getDbUser(), id);
+            }
+            if (prev.getWebUser() != null) {
+                activeByIdentity.computeIfPresent(
+                    prev.getWebUser(),
+                    (u, byIssuer) -> {
+                        byIssuer.computeIfPresent(
+                            issuerKey(prev.getWebIssuer()),
+                            (i, ids) -> {
+                                ids.remove(id);
+                                return ids.isEmpty() ? null : ids;
+                            }
+                        );
+                        return byIssuer.isEmpty() ? null : byIssuer;
+                    }
+                );
+            }
+            if (prev.getDbValidUntil() != null) {
+                expiry.remove(new Expiry(prev.getDbValidUntil().getTime(), id));
+            }
+        }
+    }
+
+    /*
+     * Scan records via memory mapped segments, returns the position after the last full record
+     */
+    private long scan(FileChannel in, long start, long end, RecordHandler handler) throws IOException {
+        long position = start;
+        while (position < end) {
+            int size = (int) Math.min(SEGMENT_SIZE, end - position);
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, position, size);
+
+            int lineStart = 0;
+            for (int i = 0; i < size; i++) {
+                if (buffer.get(i) != NEWLINE) {
+                    continue;
+                }
+
+                if (i > lineStart) {
+                    byte[] line = new byte[i - lineStart];
+                    buffer.get(lineStart, line);
+                    try {
+                        handler.handle(position + lineStart, mapper.readValue(line, JournalRecord.class));
+                    } catch (JsonProcessingException e) {
+                        log.warn("skip invalid journal record at {}: {}", position + lineStart, e.getMessage());
+                    }
+                }
+                lineStart = i + 1;
+            }
+
+            if (lineStart == 0) {
+                if (size == SEGMENT_SIZE) {
+                    throw new IOException("journal record too large at " + position);
+                }
+
+                //trailing partial record
+                break;
+            }
+
+            position += lineStart;
+        }
+
+        return position;
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND
+        );
+    }
+
+    private byte[] serialize(JournalRecord record) throws JsonProcessingException {
+        byte[] json = mapper.writeValueAsBytes(record);
+        byte[] bytes = new byte[json.length + 1];
+        System.arraycopy(json, 0, bytes, 0, json.length);
+        bytes[json.length] = NEWLINE;
+        return bytes;
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static String issuerKey(@Nullable String webIssuer) {
+        return webIssuer != null ? webIssuer : "";
+    }
+
+    private static User copy(User user, Date validUntil, String status) {
+        return User.builder()
+            .id(user.getId())
+            .createdAt(user.getCreatedAt())
+            .webIssuer(user.getWebIssuer())
+            .webUser(user.getWebUser())
+            .dbDatabase(user.getDbDatabase())
+            .dbUser(user.getDbUser())
+            .dbRoles(user.getDbRoles())
+            .dbValidUntil(validUntil)
+            .status(status)
+            .build();
+    }
+
+    @FunctionalInterface
+    private interface RecordHandler {
+        void handle(long offset, JournalRecord record) throws IOException;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record JournalRecord(String op, String id, User user) {}
+
+    private record Expiry(long until, String id) implements Comparable<Expiry> {
+        @Override
+        public int compareTo(Expiry o) {
+            int c = Long.compare(until, o.until);
+            return c != 0 ? c : id.compareTo(o.id);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.db;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-memory snapshot of the roles grantable on the database server, refreshed
+ * periodically, along with per-client allow-lists. Requests for unknown or
+ * forbidden roles are rejected before any DDL is sent to the server.
+ */
+@Service
+@Slf4j
+public class RoleCatalog {
+
+    private DbAdapter adapter;
+
+    private boolean enabled = false;
+    private long missRefresh = TimeUnit.SECONDS.toNanos(10);
+    private Map<String, Set<String>> clients = Collections.emptyMap();
+
+    //null until first successful load
+    private volatile Set<String> roles;
+    private final AtomicLong lastRefresh = new AtomicLong(0);
+
+    @Autowired(required = false)
+    public void setAdapter(DbAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    @Autowired
+    public void setProperties(RolesProperties properties) {
+        this.enabled = properties.isCatalog();
+        this.missRefresh = TimeUnit.MILLISECONDS.toNanos(properties.getMissRefresh());
+        if (properties.getClients() != null) {
+            //roles are folded to lowercase by the server
+            this.clients = properties
+                .getClients()
+                .entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> normalize(e.getValue())));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reload grantable roles from the catalog, keeping the previous snapshot on errors
+     */
+    public void refresh() {
+        if (!enabled || adapter == null) {
+            return;
+        }
+
+        lastRefresh.set(System.nanoTime());
+        try {
+            Set<String> list = normalize(adapter.roles());
+            if (roles == null || !roles.equals(list)) {
+                log.debug("role catalog refreshed with {} roles", list.size());
+            }
+            roles = list;
+        } catch (RuntimeException e) {
+            log.error("Error refreshing role catalog: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Check that the client can request the roles and that they exist
+     */
+    public void check(@Nullable String client, @Nullable Collection<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return;
+        }
+
+        Set<String> list = normalize(requested);
+
+        Set<String> allowed = client != null ? clients.get(client) : null;
+        if (allowed != null && !allowed.containsAll(list)) {
+            log.debug("roles {} not allowed for client {}", list, client);
+            throw new IllegalArgumentException("invalid roles: not allowed");
+        }
+
+        if (!enabled) {
+            return;
+        }
+
+        if (roles == null || !roles.containsAll(list)) {
+            //role could be new, refresh at most once per interval
+            long last = lastRefresh.get();
+            if (System.nanoTime() - last >= missRefresh && lastRefresh.compareAndSet(last, System.nanoTime())) {
+                refresh();
+            }
+        }
+
+        Set<String> current = roles;
+        if (current == null) {
+            //catalog unavailable, leave validation to the server
+            return;
+        }
+
+        if (!current.containsAll(list)) {
+            log.debug("roles {} not found in catalog", list);
+            throw new IllegalArgumentException("invalid roles: not found");
+        }
+    }
+
+    private static Set<String> normalize(Collection<String> values) {
+        return values.stream().map(r -> r.trim().toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+    }
+}
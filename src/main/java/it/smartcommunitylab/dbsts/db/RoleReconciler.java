@@ -0,0 +1,244 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.db;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+/**
+ * Reconciles roles on the db platform with active users in the repository.
+ * Only login roles tagged by the adapter are considered, roles without validity are never dropped.
+ * Both sides are paged by key, so memory is bounded by the batch size.
+ * Orphaned roles (not tracked) are dropped when expired, or re-tracked so
+ * that the regular cleanup removes them at expiration. Roles are re-tracked
+ * only when still orphaned on the next run, so that exchanges in flight are
+ * never tracked twice. Tracked users whose role is missing are expired.
+ */
+@Service
+@Slf4j
+public class RoleReconciler implements InitializingBean {
+
+    public static final String ACTION_DROP = "drop";
+    public static final String ACTION_TRACK = "track";
+
+    private static final String RECONCILER_ISSUER = "reconciler";
+
+    private DbAdapter adapter;
+    private UserRepository userRepository;
+
+    private boolean enabled = false;
+    private boolean dryRun = true;
+    private String action = ACTION_DROP;
+    private String pattern = DbManager.USERNAME_PATTERN;
+    private int batchSize = 100;
+    //max actions per second, 0 for unlimited
+    private int rate = 10;
+
+    //valid orphaned roles seen by the previous run, only those are tracked
+    private Set<String> candidates = new HashSet<>();
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(adapter, "db adapter can not be null");
+    }
+
+    @Autowired
+    public void setAdapter(DbAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    @Autowired(required = false)
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Autowired
+    public void setEnabled(@Value("${sts.reconciler.enabled}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Autowired
+    public void setDryRun(@Value("${sts.reconciler.dry-run}") boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    @Autowired
+    public void setAction(@Value("${sts.reconciler.action}") String action) {
+        if (ACTION_DROP.equals(action) || ACTION_TRACK.equals(action)) {
+            this.action = action;
+        }
+    }
+
+    @Autowired
+    public void setBatchSize(@Value("${sts.reconciler.batch-size}") Integer batchSize) {
+        if (batchSize != null && batchSize > 0) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    @Autowired
+    public void setRate(@Value("${sts.reconciler.rate}") Integer rate) {
+        if (rate != null && rate >= 0) {
+            this.rate = rate;
+        }
+    }
+
+    public void reconcile() {
+        if (!enabled || userRepository == null) {
+            return;
+        }
+
+        log.debug("reconcile roles with users (dry run: {})", dryRun);
+        try {
+            int orphans = reconcileRoles();
+            int missing = reconcileUsers();
+            log.info("reconciled roles: {} orphaned roles, {} users without role", orphans, missing);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int reconcileRoles() throws InterruptedException {
+        int count = 0;
+        String after = null;
+        List<DbUser> page;
+        Set<String> orphans = new HashSet<>();
+
+        do {
+            page = adapter.list(pattern, after, batchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            after = page.get(page.size() - 1).getUsername();
+            Set<String> tracked = userRepository.findActiveDbUsers(page.stream().map(u -> u.getUsername()).toList());
+
+            Instant now = Instant.now();
+            for (DbUser user : page) {
+                if (tracked.contains(user.getUsername())) {
+                    continue;
+                }
+
+                if (user.getValidUntil() == null) {
+                    //sts roles always have a validity, never drop unbounded ones
+                    log.warn("orphaned role {} has no validity, skip", user.getUsername());
+                    continue;
+                }
+
+                boolean expired = user.getValidUntil().isBefore(now);
+                if (expired) {
+                    log.info("orphaned role {} is expired, drop", user.getUsername());
+                    if (!dryRun) {
+                        drop(user);
+                    }
+                } else if (ACTION_TRACK.equals(action)) {
+                    //an exchange may not have stored the role yet, wait for it to outlive a whole interval
+                    orphans.add(user.getUsername());
+                    if (!candidates.contains(user.getUsername())) {
+                        log.debug("orphaned role {} seen for the first time, track on next run", user.getUsername());
+                        continue;
+                    }
+
+                    log.info("orphaned role {} valid until {}, track", user.getUsername(), user.getValidUntil());
+                    if (!dryRun) {
+                        track(user);
+                    }
+                } else {
+                    //login is blocked by valid until, drop once expired
+                    log.debug("orphaned role {} valid until {}, skip", user.getUsername(), user.getValidUntil());
+                    continue;
+                }
+
+                count++;
+                throttle();
+            }
+        } while (page.size() == batchSize);
+
+        candidates = orphans;
+        return count;
+    }
+
+    private int reconcileUsers() throws InterruptedException {
+        int count = 0;
+        String after = null;
+        List<User> page;
+
+        do {
+            page = userRepository.findActive(after, batchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            after = page.get(page.size() - 1).getId();
+            Set<String> existing = adapter.exists(page.stream().map(u -> u.getDbUser()).distinct().toList());
+
+            for (User user : page) {
+                if (existing.contains(user.getDbUser())) {
+                    continue;
+                }
+
+                log.info("user {} has no role {}, expire", user.getId(), user.getDbUser());
+                if (!dryRun) {
+                    userRepository.expire(user.getId());
+                }
+
+                count++;
+                throttle();
+            }
+        } while (page.size() == batchSize);
+
+        return count;
+    }
+
+    private void drop(DbUser user) {
+        try {
+            adapter.delete(user);
+        } catch (Exception e) {
+            log.error("Error removing orphaned role {}: {}", user.getUsername(), e.getMessage());
+        }
+    }
+
+    private void track(DbUser user) {
+        User u = User.builder()
+            .id(UUID.randomUUID().toString())
+            .webIssuer(RECONCILER_ISSUER)
+            .dbDatabase(user.getDatabase())
+            .dbUser(user.getUsername())
+            .dbRoles(user.getRoles() != null ? user.getRoles().toArray(new String[0]) : null)
+            .dbValidUntil(Date.from(user.getValidUntil()))
+            .status("active")
+            .build();
+
+        userRepository.store(u);
+    }
+
+    private void throttle() throws InterruptedException {
+        if (rate > 0 && !dryRun) {
+            Thread.sleep(1000l / rate);
+        }
+    }
+}
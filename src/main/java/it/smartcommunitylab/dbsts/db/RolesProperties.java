@@ -0,0 +1,48 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.db;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "sts.roles", ignoreUnknownFields = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RolesProperties {
+
+    //validate requested roles against the catalog
+    private boolean catalog = false;
+
+    //interval (ms) between catalog refreshes
+    private long refresh = 300000;
+
+    //min interval (ms) between refreshes triggered by unknown roles
+    private long missRefresh = 10000;
+
+    //roles allowed per client, clients not listed can request any role
+    private Map<String, Set<String>> clients = new HashMap<>();
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.db;
+
+import it.smartcommunitylab.dbsts.leader.LeaderElection;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Maintains monthly partitions of the users table on postgresql:
+ * partitions are created ahead of time and whole partitions older than the
+ * retention period are dropped, instead of deleting rows one by one.
+ * Rows written to the default partition before their month existed are moved
+ * into the new partition, expired ones are pruned with the retention.
+ */
+@Slf4j
+@Component
+public class UserPartitionManager implements InitializingBean {
+
+    public static final String PARTITIONING_MONTH = "month";
+
+    private static final String PARTITION_PREFIX = "users_p";
+    private static final Pattern PARTITION_PATTERN = Pattern.compile("^" + PARTITION_PREFIX + "(\\d{6})$");
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String IS_PARTITIONED_SQL =
+        "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = 'users')";
+    private static final String LIST_PARTITIONS_SQL =
+        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'users'";
+    private static final String DEFAULT_PARTITION = "users_default";
+    private static final String CREATE_PARTITION_SQL =
+        "CREATE TABLE IF NOT EXISTS %s PARTITION OF users FOR VALUES FROM ('%s') TO ('%s')";
+    private static final String PARTITION_EXISTS_SQL = "SELECT to_regclass(?) IS NOT NULL";
+    private static final String HAS_DEFAULT_ROWS_SQL =
+        "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE created_at >= ?::timestamptz AND created_at < ?::timestamptz)";
+    //a partition can't be created while the default one holds rows in its range
+    private static final String DETACH_DEFAULT_SQL = "ALTER TABLE users DETACH PARTITION " + DEFAULT_PARTITION;
+    private static final String MOVE_DEFAULT_ROWS_SQL =
+        "INSERT INTO users SELECT * FROM " + DEFAULT_PARTITION + " WHERE created_at >= ?::timestamptz AND created_at < ?::timestamptz";
+    private static final String DELETE_DEFAULT_ROWS_SQL =
+        "DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at >= ?::timestamptz AND created_at < ?::timestamptz";
+    private static final String ATTACH_DEFAULT_SQL = "ALTER TABLE users ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT";
+    private static final String PRUNE_DEFAULT_SQL =
+        "DELETE FROM " + DEFAULT_PARTITION + " WHERE created_at < ?::timestamptz AND _status <> 'active'";
+    private static final String HAS_ACTIVE_SQL = "SELECT EXISTS (SELECT 1 FROM %s WHERE _status = 'active')";
+    private static final String DROP_PARTITION_SQL = "DROP TABLE IF EXISTS %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String platform;
+    private final String partitioning;
+
+    //number of months to keep, 0 disables retention
+    private int retention = 0;
+    //number of months to create ahead of current
+    private int ahead = 2;
+
+    private boolean enabled = false;
+
+    private LeaderElection leaderElection;
+
+    public UserPartitionManager(
+        JdbcTemplate jdbcTemplate,
+        @Value("${spring.sql.init.platform}") String platform,
+        @Value("${sts.audit.partitioning}") String partitioning
+    ) {
+        Assert.notNull(jdbcTemplate, "jdbc is required to manage partitions");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.platform = platform;
+        this.partitioning = partitioning;
+    }
+
+    @Autowired
+    public void setRetention(@Value("${sts.audit.retention}") Integer retention) {
+        if (retention != null && retention >= 0) {
+            this.retention = retention;
+        }
+    }
+
+    @Autowired(required = false)
+    public void setLeaderElection(LeaderElection leaderElection) {
+        this.leaderElection = leaderElection;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!PARTITIONING_MONTH.equals(partitioning)) {
+            return;
+        }
+
+        if (platform == null || !platform.startsWith("postgresql")) {
+            log.warn("users table partitioning is supported only on postgresql, disabled for {}", platform);
+            return;
+        }
+
+        try {
+            Boolean partitioned = jdbcTemplate.queryForObject(IS_PARTITIONED_SQL, Boolean.class);
+            if (!Boolean.TRUE.equals(partitioned)) {
+                log.warn("users table is not partitioned, partition management disabled");
+                return;
+            }
+
+            this.enabled = true;
+            log.info("users table partitioning by {} with retention {} months", partitioning, retention);
+        } catch (Exception e) {
+            log.error("Error initializing partitions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Create current partitions once ready, off the startup path: until then
+     * rows land in the default partition. Only the leader runs the DDL, other
+     * replicas rely on its periodic maintenance
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) {
+            return;
+        }
+
+        //replicas starting together would race on the same DDL, blocking writes
+        if (leaderElection != null && !leaderElection.isLeader()) {
+            log.debug("partitions left to the leader");
+            return;
+        }
+
+        try {
+            createPartitions();
+        } catch (Exception e) {
+            log.error("Error creating partitions: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+
+        log.debug("maintain users partitions");
+        createPartitions();
+
+        if (retention > 0) {
+            dropExpiredPartitions();
+        }
+    }
+
+    private void createPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= ahead; i++) {
+            YearMonth month = current.plusMonths(i);
+            String name = PARTITION_PREFIX + month.format(PARTITION_FORMAT);
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(PARTITION_EXISTS_SQL, Boolean.class, name))) {
+                continue;
+            }
+
+            String from = bound(month);
+            String to = bound(month.plusMonths(1));
+            String sql = String.format(CREATE_PARTITION_SQL, name, from, to);
+            if (log.isTraceEnabled()) {
+                log.trace("sql: {}", sql);
+            }
+
+            Boolean pending = jdbcTemplate.queryForObject(HAS_DEFAULT_ROWS_SQL, Boolean.class, from, to);
+            if (!Boolean.TRUE.equals(pending)) {
+                log.debug("create partition {}", name);
+                jdbcTemplate.execute(sql);
+                continue;
+            }
+
+            //rows already in the default partition: move them, all or nothing
+            log.info("create partition {} moving rows from {}", name, DEFAULT_PARTITION);
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute(DETACH_DEFAULT_SQL);
+                jdbcTemplate.execute(sql);
+                int moved = jdbcTemplate.update(MOVE_DEFAULT_ROWS_SQL, from, to);
+                jdbcTemplate.update(DELETE_DEFAULT_ROWS_SQL, from, to);
+                jdbcTemplate.execute(ATTACH_DEFAULT_SQL);
+                log.debug("moved {} rows to partition {}", moved, name);
+            });
+        }
+    }
+
+    private void dropExpiredPartitions() {
+        //partitions entirely before the cutoff month are expired
+        YearMonth cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(retention);
+
+        List<String> partitions = jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class);
+        for (String name : partitions) {
+            Matcher matcher = PARTITION_PATTERN.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            YearMonth month = YearMonth.parse(matcher.group(1), PARTITION_FORMAT);
+            if (!month.isBefore(cutoff)) {
+                continue;
+            }
+
+            //never drop records for roles still pending cleanup
+            Boolean active = jdbcTemplate.queryForObject(String.format(HAS_ACTIVE_SQL, name), Boolean.class);
+            if (Boolean.TRUE.equals(active)) {
+                log.warn("partition {} still has active users, skip drop", name);
+                continue;
+            }
+
+            log.info("drop expired partition {}", name);
+            jdbcTemplate.execute(String.format(DROP_PARTITION_SQL, name));
+        }
+
+        //rows outside any monthly partition, active ones are kept as above
+        int pruned = jdbcTemplate.update(PRUNE_DEFAULT_SQL, bound(cutoff));
+        if (pruned > 0) {
+            log.info("pruned {} expired rows from {}", pruned, DEFAULT_PARTITION);
+        }
+    }
+
+    private static String bound(YearMonth month) {
+        return month.atDay(1) + " 00:00:00+00";
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.smartcommunitylab.dbsts.deadline;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+/**
+ * Client supplied deadline for a request, bound to the threads serving it.
+ * Statements executed under a deadline are watched and actively cancelled
+ * once it passes, so that abandoned requests release locks and connections.
+ */
+@Slf4j
+public final class Deadline implements AutoCloseable {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    //shared timer, tasks are removed from the queue when cancelled
+    private static final ScheduledThreadPoolExecutor CANCELLER;
+
+    static {
+        CANCELLER = new ScheduledThreadPoolExecutor(
+            1,
+            r -> {
+                Thread t = new Thread(r, "deadline-canceller");
+                t.setDaemon(true);
+                return t;
+            }
+        );
+        CANCELLER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final long expiresAt;
+
+    //running statement per thread, a thread runs a single statement at a time
+    private final Map<Thread, Statement> statements = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private ScheduledFuture<?> canceller;
+    private boolean closed = false;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public static Deadline after(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("invalid request timeout");
+        }
+
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Parse the header value (milliseconds), null when missing
+     */
+    public static @Nullable Deadline parse(@Nullable String timeout) {
+        if (timeout == null || timeout.isBlank()) {
+            return null;
+        }
+
+        try {
+            return after(Long.parseLong(timeout.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid request timeout");
+        }
+    }
+
+    public static @Nullable Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Fail fast when the current deadline, if any, has passed
+     */
+    public static void check() {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    public static boolean isExceeded() {
+        Deadline deadline = CURRENT.get();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * Run outside of any deadline, for compensations which must complete
+     */
+    public static void detached(Runnable action) {
+        Deadline previous = CURRENT.get();
+        CURRENT.remove();
+        try {
+            action.run();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    /**
+     * Run bound to the given deadline, which may be null
+     */
+    public static <T> T call(@Nullable Deadline deadline, Supplier<T> action) {
+        Deadline previous = CURRENT.get();
+        bind(deadline);
+        try {
+            return action.get();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    private static void bind(@Nullable Deadline deadline) {
+        if (deadline != null) {
+            CURRENT.set(deadline);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    public long remaining() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Watch the statement about to run on the current thread
+     */
+    public void watch(Statement statement) {
+        statements.put(Thread.currentThread(), statement);
+
+        lock.lock();
+        try {
+            if (canceller == null && !closed) {
+                canceller = CANCELLER.schedule(this::cancel, Math.max(remaining(), 0), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unwatch() {
+        statements.remove(Thread.currentThread());
+    }
+
+    private void cancel() {
+        statements.forEach((thread, statement) -> {
+            log.debug("deadline exceeded, cancel statement on {}", thread.getName());
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                //statement already completed or closed
+                log.trace("Error cancelling statement: {}", e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (canceller != null) {
+                canceller.cancel(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+        statements.clear();
+    }
+}
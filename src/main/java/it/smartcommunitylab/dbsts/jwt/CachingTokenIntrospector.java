@@ -0,0 +1,137 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.smartcommunitylab.dbsts.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.util.Assert;
+
+/**
+ * Introspector decorator with a bounded, least recently used cache. Active tokens are
+ * cached up to the ttl and never past their expiration, inactive or invalid tokens for
+ * the negative ttl. Introspection errors (endpoint unreachable) are never cached.
+ * Entries are keyed by a digest, so bearer tokens are not kept in memory.
+ */
+@Slf4j
+public class CachingTokenIntrospector implements OpaqueTokenIntrospector {
+
+    private final OpaqueTokenIntrospector introspector;
+    private final long ttl;
+    private final long negativeTtl;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> cache;
+
+    public CachingTokenIntrospector(OpaqueTokenIntrospector introspector, long ttl, long negativeTtl, int size) {
+        Assert.notNull(introspector, "introspector is required");
+        Assert.isTrue(size > 0, "cache size must be positive");
+        this.introspector = introspector;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+
+        //access ordered, evicts the least recently used entry when full
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        String key = digest(token);
+        long now = System.currentTimeMillis();
+
+        Entry entry = get(key, now);
+        if (entry != null) {
+            log.trace("introspection cache hit");
+            if (entry.error() != null) {
+                throw new BadOpaqueTokenException(entry.error());
+            }
+
+            return entry.principal();
+        }
+
+        OAuth2AuthenticatedPrincipal principal;
+        try {
+            principal = introspector.introspect(token);
+        } catch (BadOpaqueTokenException e) {
+            if (negativeTtl > 0) {
+                put(key, new Entry(null, e.getMessage(), now + negativeTtl));
+            }
+            throw e;
+        }
+
+        //never cache past token expiration
+        long expiresAt = now + ttl;
+        Object exp = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP);
+        if (exp instanceof Instant instant) {
+            expiresAt = Math.min(expiresAt, instant.toEpochMilli());
+        }
+        if (expiresAt > now) {
+            put(key, new Entry(principal, null, expiresAt));
+        }
+
+        return principal;
+    }
+
+    private Entry get(String key, long now) {
+        lock.lock();
+        try {
+            Entry entry = cache.get(key);
+            if (entry != null && entry.expiresAt() <= now) {
+                cache.remove(key);
+                return null;
+            }
+
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        lock.lock();
+        try {
+            cache.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("sha-256 not available");
+        }
+    }
+
+    private record Entry(OAuth2AuthenticatedPrincipal principal, String error, long expiresAt) {}
+}
@@ -17,8 +17,12 @@
 package it.smartcommunitylab.dbsts.jwt;
 
 import it.smartcommunitylab.dbsts.api.TokenRequest;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreaker;
+import it.smartcommunitylab.dbsts.breaker.CircuitBreakerRegistry;
+import it.smartcommunitylab.dbsts.deadline.Deadline;
 import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -30,13 +34,19 @@ import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtClaimNames;
@@ -44,12 +54,19 @@ import org.springframework.security.oauth2.jwt.JwtClaimValidator;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtValidators;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthentication;
 import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.OpaqueTokenAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.introspection.SpringOpaqueTokenIntrospector;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestOperations;
 
 @Service
 @Slf4j
@@ -58,19 +75,44 @@ public class JwtService {
     private static final String ROLE_PREFIX = "PG_";
     private final String issuerUri;
 
+    private final String audience;
+    private final String claim;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+
     private JwtAuthenticationProvider jwtAuthProvider;
 
+    //opaque tokens, resolved via introspection
+    private OpaqueTokenAuthenticationProvider introspectionProvider;
+    private String introspectionUri;
+
+    //guards decoding, opens when the issuer (jwks) is unreachable
+    private CircuitBreaker breaker;
+
     private int defaultDuration = 3600;
 
     public JwtService(
         @Value("${sts.jwt.issuer-uri}") String issuerUri,
         @Value("${sts.jwt.audience}") String audience,
-        @Value("${sts.jwt.claim}") String claim
+        @Value("${sts.jwt.claim}") String claim,
+        @Value("${sts.jwt.connect-timeout}") Integer connectTimeout,
+        @Value("${sts.jwt.read-timeout}") Integer readTimeout
     ) {
         this.issuerUri = issuerUri;
+        this.audience = audience;
+        this.claim = claim;
+        this.connectTimeout = Duration.ofMillis(connectTimeout != null ? connectTimeout : 5000);
+        this.readTimeout = Duration.ofMillis(readTimeout != null ? readTimeout : 5000);
+
         if (StringUtils.hasText(issuerUri)) {
+            //bound discovery and jwks fetches
+            RestOperations rest = new RestTemplateBuilder()
+                .setConnectTimeout(this.connectTimeout)
+                .setReadTimeout(this.readTimeout)
+                .build();
+
             //build auth provider to validate web jwt
-            JwtAuthenticationProvider provider = new JwtAuthenticationProvider(jwtDecoder(issuerUri, audience));
+            JwtAuthenticationProvider provider = new JwtAuthenticationProvider(jwtDecoder(issuerUri, audience, rest));
             provider.setJwtAuthenticationConverter(jwtAuthConverter(claim));
             this.jwtAuthProvider = provider;
         }
@@ -83,6 +125,41 @@ public class JwtService {
         }
     }
 
+    @Autowired(required = false)
+    public void setIntrospection(IntrospectionProperties properties) {
+        if (properties == null || !StringUtils.hasText(properties.getUri())) {
+            return;
+        }
+
+        //client authenticates to the introspection endpoint with basic auth
+        RestTemplateBuilder builder = new RestTemplateBuilder()
+            .setConnectTimeout(connectTimeout)
+            .setReadTimeout(readTimeout);
+        if (StringUtils.hasText(properties.getClientId())) {
+            builder = builder.basicAuthentication(properties.getClientId(), properties.getClientSecret());
+        }
+
+        OpaqueTokenIntrospector introspector = new SpringOpaqueTokenIntrospector(properties.getUri(), builder.build());
+        if (properties.getCacheTtl() > 0 || properties.getNegativeTtl() > 0) {
+            introspector = new CachingTokenIntrospector(
+                introspector,
+                properties.getCacheTtl(),
+                properties.getNegativeTtl(),
+                properties.getCacheSize()
+            );
+        }
+
+        OpaqueTokenAuthenticationProvider provider = new OpaqueTokenAuthenticationProvider(introspector);
+        provider.setAuthenticationConverter(opaqueAuthConverter(claim));
+        this.introspectionProvider = provider;
+        this.introspectionUri = properties.getUri();
+    }
+
+    @Autowired(required = false)
+    public void setBreakerRegistry(CircuitBreakerRegistry registry) {
+        this.breaker = registry != null ? registry.get("jwt") : null;
+    }
+
     public WebIdentity assumeWebIdentity(@NotNull TokenRequest request) {
         //resolve token if available
         String token = request.getToken();
@@ -148,7 +225,7 @@ public class JwtService {
 
     public WebIdentity assumeWebIdentity(@NotNull String token, Integer duration) {
         log.info("assume web identity request");
-        if (jwtAuthProvider == null) {
+        if (jwtAuthProvider == null && introspectionProvider == null) {
             throw new IllegalArgumentException("token exchange not supported, jwt provider not configured");
         }
 
@@ -156,10 +233,17 @@ public class JwtService {
             log.trace("token: {}", token);
         }
 
+        //skip validation (and issuer calls) for abandoned requests
+        Deadline.check();
+
         try {
-            //autenticate jwt token via provider
+            //autenticate token via jwt or introspection provider
             BearerTokenAuthenticationToken request = new BearerTokenAuthenticationToken(token);
-            Authentication webAuth = jwtAuthProvider.authenticate(request);
+            AuthenticationProvider provider = provider(token);
+            //only issuer failures count for the breaker, invalid tokens do not
+            Authentication webAuth = breaker != null
+                ? breaker.execute(() -> provider.authenticate(request), e -> e instanceof AuthenticationServiceException)
+                : provider.authenticate(request);
             if (!webAuth.isAuthenticated()) {
                 throw new IllegalArgumentException("invalid or missing token");
             }
@@ -176,6 +260,8 @@ public class JwtService {
             Instant exp = null;
             if (webAuth instanceof ExpiringJwtAuthenticationToken) {
                 exp = ((ExpiringJwtAuthenticationToken) webAuth).getExpiration();
+            } else if (webAuth instanceof BearerTokenAuthentication) {
+                exp = ((BearerTokenAuthentication) webAuth).getToken().getExpiresAt();
             }
 
             //evaluate token expiration
@@ -193,11 +279,14 @@ public class JwtService {
             String database = null;
             if (webAuth instanceof JwtAuthenticationToken) {
                 database = ((JwtAuthenticationToken) webAuth).getToken().getClaimAsString("database");
+            } else if (webAuth instanceof BearerTokenAuthentication) {
+                Object value = ((BearerTokenAuthentication) webAuth).getTokenAttributes().get("database");
+                database = value != null ? value.toString() : null;
             }
 
             //build identity
             WebIdentity id = WebIdentity.builder()
-                .issuer(issuerUri)
+                .issuer(issuer(webAuth))
                 .createdAt(now)
                 .expiresAt(expiration)
                 .username(webAuth.getName())
@@ -215,11 +304,67 @@ public class JwtService {
         }
     }
 
+    /**
+     * Derive a scoped identity from an already validated one, without re-validation.
+     * Database resolution matches single exchanges: token identities are scoped only
+     * by their claim, the requested database applies to username identities
+     */
+    public WebIdentity scopeWebIdentity(
+        @NotNull WebIdentity identity,
+        boolean token,
+        @Nullable String database,
+        @Nullable Integer duration
+    ) {
+        String db = identity.getDatabase();
+        if (!token && StringUtils.hasText(database)) {
+            db = database;
+        }
+
+        //request duration can only shorten identity expiration
+        Instant expiration = identity.getExpiresAt();
+        Instant expd = duration != null ? Instant.now().plus(duration, ChronoUnit.SECONDS) : null;
+        if (expd != null && (expiration == null || expd.isBefore(expiration))) {
+            expiration = expd;
+        }
+
+        return WebIdentity.builder()
+            .issuer(identity.getIssuer())
+            .createdAt(identity.getCreatedAt())
+            .expiresAt(expiration)
+            .username(identity.getUsername())
+            .roles(identity.getRoles())
+            .database(db)
+            .build();
+    }
+
+    private AuthenticationProvider provider(String token) {
+        //jwts are made of three segments, anything else is opaque
+        boolean jwt = token.chars().filter(c -> c == '.').count() == 2;
+        if (jwtAuthProvider != null && (jwt || introspectionProvider == null)) {
+            return jwtAuthProvider;
+        }
+
+        return introspectionProvider;
+    }
+
+    private String issuer(Authentication webAuth) {
+        if (!(webAuth instanceof BearerTokenAuthentication)) {
+            //jwts are validated against the configured issuer
+            return issuerUri;
+        }
+
+        //opaque tokens: issuer from the response when available, never the jwt issuer,
+        //so subjects of different providers are distinct identities
+        Object iss = ((BearerTokenAuthentication) webAuth).getTokenAttributes()
+            .get(OAuth2TokenIntrospectionClaimNames.ISS);
+        return iss != null ? iss.toString() : introspectionUri;
+    }
+
     /*
      * JWT decoder
      */
-    private JwtDecoder jwtDecoder(String issuer, String audience) {
-        NimbusJwtDecoder jwtDecoder = NimbusJwtDecoder.withIssuerLocation(issuer).build();
+    private JwtDecoder jwtDecoder(String issuer, String audience, RestOperations rest) {
+        NimbusJwtDecoder jwtDecoder = NimbusJwtDecoder.withIssuerLocation(issuer).restOperations(rest).build();
         OAuth2TokenValidator<Jwt> withIssuer = JwtValidators.createDefaultWithIssuer(issuer);
         jwtDecoder.setJwtValidator(withIssuer);
 
@@ -258,4 +403,42 @@ public class JwtService {
             return new ExpiringJwtAuthenticationToken(jwt, authorities, jwt.getExpiresAt());
         };
     }
+
+    /*
+     * Introspected principal, with the same audience check and role mapping of JWTs
+     */
+    private OpaqueTokenAuthenticationConverter opaqueAuthConverter(String rolesClaimName) {
+        return (String token, OAuth2AuthenticatedPrincipal principal) -> {
+            if (StringUtils.hasText(audience)) {
+                List<String> aud = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.AUD);
+                if (aud == null || !aud.contains(audience)) {
+                    throw new InvalidBearerTokenException("invalid audience");
+                }
+            }
+
+            Set<GrantedAuthority> authorities = new HashSet<>();
+            authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
+
+            //read roles from response
+            if (StringUtils.hasText(rolesClaimName)) {
+                Object roles = principal.getAttribute(rolesClaimName);
+                if (roles instanceof Collection<?> list) {
+                    list.forEach(r ->
+                        //derive a scoped PG role
+                        authorities.add(new SimpleGrantedAuthority(ROLE_PREFIX + r))
+                    );
+                } else if (roles instanceof String value) {
+                    StringUtils.commaDelimitedListToSet(value).forEach(r ->
+                        authorities.add(new SimpleGrantedAuthority(ROLE_PREFIX + r.trim()))
+                    );
+                }
+            }
+
+            Instant iat = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.IAT);
+            Instant exp = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP);
+            OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, token, iat, exp);
+
+            return new BearerTokenAuthentication(principal, accessToken, authorities);
+        };
+    }
 }
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.leader;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Leader election over the shared audit database, so that cluster-singleton
+ * background tasks run on exactly one replica.
+ * On postgresql the leader holds a session level advisory lock on a dedicated
+ * connection: when the leader dies the session ends and the lock is released
+ * immediately. Other platforms use a lease row renewed by heartbeats, taken
+ * over by another replica once expired.
+ */
+@Slf4j
+@Component
+public class LeaderElection implements InitializingBean, DisposableBean {
+
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_LOCK = "lock";
+    public static final String MODE_LEASE = "lease";
+
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(?)";
+    private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(?)";
+    private static final String RENEW_LEASE_SQL =
+        "UPDATE leader_lease SET holder = ?, expires_at = ? WHERE name = ? AND (holder = ? OR expires_at < ?)";
+    private static final String INSERT_LEASE_SQL = "INSERT INTO leader_lease (name, holder, expires_at) VALUES (?, ?, ?)";
+    private static final String RELEASE_LEASE_SQL = "UPDATE leader_lease SET expires_at = ? WHERE name = ? AND holder = ?";
+
+    //seconds to wait when validating the lock connection
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String platform;
+    private final String holder;
+
+    private boolean enabled = false;
+    private String mode = MODE_AUTO;
+    private String name = "db-sts";
+    //lease duration in ms
+    private long lease = 30000;
+
+    //guards heartbeat and release
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean leader = false;
+    //local deadline (nanos) of the current lease
+    private volatile long leaseUntil = 0;
+    //dedicated session holding the advisory lock
+    private Connection connection;
+
+    public LeaderElection(JdbcTemplate jdbcTemplate, @Value("${spring.sql.init.platform}") String platform) {
+        Assert.notNull(jdbcTemplate, "jdbc is required for leader election");
+        this.jdbcTemplate = jdbcTemplate;
+        this.platform = platform;
+
+        String host = System.getenv("HOSTNAME");
+        this.holder = (StringUtils.hasText(host) ? host + "-" : "") + UUID.randomUUID().toString();
+    }
+
+    @Autowired
+    public void setEnabled(@Value("${sts.leader.enabled}") Boolean enabled) {
+        this.enabled = Boolean.TRUE.equals(enabled);
+    }
+
+    @Autowired
+    public void setMode(@Value("${sts.leader.mode}") String mode) {
+        if (StringUtils.hasText(mode)) {
+            this.mode = mode;
+        }
+    }
+
+    @Autowired
+    public void setName(@Value("${sts.leader.name}") String name) {
+        if (StringUtils.hasText(name)) {
+            this.name = name;
+        }
+    }
+
+    @Autowired
+    public void setLease(@Value("${sts.leader.lease}") Long lease) {
+        if (lease != null && lease > 0) {
+            this.lease = lease;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!enabled) {
+            return;
+        }
+
+        if (MODE_AUTO.equals(mode)) {
+            mode = platform != null && platform.startsWith("postgresql") ? MODE_LOCK : MODE_LEASE;
+        }
+
+        if (!MODE_LOCK.equals(mode) && !MODE_LEASE.equals(mode)) {
+            throw new IllegalArgumentException("invalid leader election mode: " + mode);
+        }
+
+        log.info("leader election enabled for {} via {} as {}", name, mode, holder);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        release();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if this replica should run cluster-singleton tasks, always true when disabled
+     */
+    public boolean isLeader() {
+        if (!enabled) {
+            return true;
+        }
+
+        //a lease not renewed in time is not valid anymore, even if we could not notice
+        return leader && (MODE_LOCK.equals(mode) || System.nanoTime() < leaseUntil);
+    }
+
+    /**
+     * Acquire or renew leadership, to be invoked periodically well within the lease duration
+     */
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            boolean was = leader;
+            leader = MODE_LOCK.equals(mode) ? holdLock() : holdLease();
+
+            if (leader && !was) {
+                log.info("acquired leadership for {} as {}", name, holder);
+            } else if (!leader && was) {
+                log.warn("lost leadership for {} as {}", name, holder);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Step down, letting another replica take over without waiting for expiration
+     */
+    public void release() {
+        if (!enabled) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (MODE_LOCK.equals(mode)) {
+                if (connection != null) {
+                    try (PreparedStatement ps = connection.prepareStatement(UNLOCK_SQL)) {
+                        ps.setLong(1, key());
+                        ps.execute();
+                    } catch (SQLException e) {
+                        log.debug("Error releasing advisory lock: {}", e.getMessage());
+                    }
+                    close();
+                }
+            } else if (leader) {
+                try {
+                    jdbcTemplate.update(RELEASE_LEASE_SQL, new Timestamp(System.currentTimeMillis()), name, holder);
+                } catch (DataAccessException e) {
+                    log.debug("Error releasing lease: {}", e.getMessage());
+                }
+            }
+
+            if (leader) {
+                log.info("released leadership for {} as {}", name, holder);
+            }
+            leader = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean holdLock() {
+        try {
+            if (connection != null) {
+                if (connection.isValid(VALIDATION_TIMEOUT)) {
+                    //session alive, lock still held
+                    return true;
+                }
+
+                //session lost, the lock was released server side
+                close();
+            }
+
+            DataSource dataSource = jdbcTemplate.getDataSource();
+            Assert.notNull(dataSource, "datasource is required");
+
+            Connection c = dataSource.getConnection();
+            c.setAutoCommit(true);
+            boolean acquired = false;
+            try (PreparedStatement ps = c.prepareStatement(TRY_LOCK_SQL)) {
+                ps.setLong(1, key());
+                try (ResultSet rs = ps.executeQuery()) {
+                    acquired = rs.next() && rs.getBoolean(1);
+                }
+            }
+
+            if (acquired) {
+                //keep the session open to hold the lock
+                connection = c;
+            } else {
+                c.close();
+            }
+
+            return acquired;
+        } catch (SQLException e) {
+            log.warn("Error acquiring advisory lock: {}", e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    private boolean holdLease() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Timestamp until = new Timestamp(now + lease);
+
+        try {
+            //renew our own lease or take over an expired one
+            int count = jdbcTemplate.update(RENEW_LEASE_SQL, holder, until, name, holder, new Timestamp(now));
+            if (count == 0) {
+                try {
+                    count = jdbcTemplate.update(INSERT_LEASE_SQL, name, holder, until);
+                } catch (DuplicateKeyException e) {
+                    //held by another replica
+                    count = 0;
+                }
+            }
+
+            if (count > 0) {
+                leaseUntil = start + TimeUnit.MILLISECONDS.toNanos(lease);
+                return true;
+            }
+
+            return false;
+        } catch (DataAccessException e) {
+            log.warn("Error renewing lease: {}", e.getMessage());
+            //keep leadership only until the current lease expires
+            return leader && System.nanoTime() < leaseUntil;
+        }
+    }
+
+    private void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Error closing lock connection: {}", e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    private long key() {
+        //stable lock key derived from the election name
+        return name.hashCode();
+    }
+}
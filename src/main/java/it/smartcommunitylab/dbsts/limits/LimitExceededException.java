@@ -0,0 +1,36 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.limits;
+
+public class LimitExceededException extends RuntimeException {
+
+    //seconds before retrying, when known
+    private final Long retryAfter;
+
+    public LimitExceededException(String message) {
+        this(message, null);
+    }
+
+    public LimitExceededException(String message, Long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Long getRetryAfter() {
+        return retryAfter;
+    }
+}
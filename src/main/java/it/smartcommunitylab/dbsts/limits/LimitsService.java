@@ -0,0 +1,184 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.limits;
+
+import it.smartcommunitylab.dbsts.db.User;
+import it.smartcommunitylab.dbsts.db.UserRepository;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Rate limits per client and per web identity, and quota of active credentials per identity.
+ * Buckets and counters live in concurrent maps, no global lock is taken on the request path.
+ */
+@Service
+@Slf4j
+public class LimitsService {
+
+    private static final String SEPARATOR = "|";
+    //seconds between resets of the counters, see scheduler config
+    private static final long RESET_INTERVAL = 300;
+
+    private UserRepository userRepository;
+
+    //requests per minute and burst size, rate 0 disables
+    private int clientRate = 0;
+    private int clientBurst = 20;
+    private int identityRate = 0;
+    private int identityBurst = 10;
+
+    //max active credentials per identity, 0 disables
+    private int maxActive = 0;
+
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> identityBuckets = new ConcurrentHashMap<>();
+
+    //active credentials per identity, loaded from repository on first use
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    @Autowired(required = false)
+    public void setUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Autowired
+    public void setClientRate(
+        @Value("${sts.limits.client-rate}") Integer rate,
+        @Value("${sts.limits.client-burst}") Integer burst
+    ) {
+        if (rate != null && rate >= 0) {
+            this.clientRate = rate;
+        }
+        if (burst != null && burst > 0) {
+            this.clientBurst = burst;
+        }
+    }
+
+    @Autowired
+    public void setIdentityRate(
+        @Value("${sts.limits.identity-rate}") Integer rate,
+        @Value("${sts.limits.identity-burst}") Integer burst
+    ) {
+        if (rate != null && rate >= 0) {
+            this.identityRate = rate;
+        }
+        if (burst != null && burst > 0) {
+            this.identityBurst = burst;
+        }
+    }
+
+    @Autowired
+    public void setMaxActive(@Value("${sts.limits.max-active}") Integer maxActive) {
+        if (maxActive != null && maxActive >= 0) {
+            this.maxActive = maxActive;
+        }
+    }
+
+    public void checkClient(String client) {
+        if (clientRate > 0 && client != null) {
+            consume(clientBuckets, client, clientBurst, clientRate, "client");
+        }
+    }
+
+    public void checkIdentity(String issuer, String username) {
+        if (identityRate > 0 && username != null) {
+            consume(identityBuckets, key(issuer, username), identityBurst, identityRate, "identity");
+        }
+    }
+
+    /**
+     * Reserve an active credential slot for the identity, to be released on failure or revocation
+     */
+    public void acquire(String issuer, String username) {
+        if (maxActive <= 0 || username == null) {
+            return;
+        }
+
+        AtomicInteger counter = counter(issuer, username);
+        int count = counter.incrementAndGet();
+        if (count > maxActive) {
+            counter.decrementAndGet();
+            log.debug("quota exceeded for identity {}: {} active credentials", username, maxActive);
+            throw new LimitExceededException("too many active credentials", retryAfter(issuer, username));
+        }
+    }
+
+    public void release(String issuer, String username) {
+        if (maxActive <= 0 || username == null) {
+            return;
+        }
+
+        AtomicInteger counter = active.get(key(issuer, username));
+        if (counter != null) {
+            counter.updateAndGet(c -> c > 0 ? c - 1 : 0);
+        }
+    }
+
+    /**
+     * Drop idle buckets and counters, counters are reloaded from the repository on next use
+     */
+    public void cleanup() {
+        clientBuckets.values().removeIf(TokenBucket::isIdle);
+        identityBuckets.values().removeIf(TokenBucket::isIdle);
+        active.clear();
+    }
+
+    private void consume(Map<String, TokenBucket> buckets, String key, int burst, int rate, String type) {
+        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(burst, rate / 60.0));
+        long wait = bucket.tryConsume();
+        if (wait > 0) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+            log.debug("rate limit exceeded for {} {}, retry after {}s", type, key, retryAfter);
+            throw new LimitExceededException("rate limit exceeded", retryAfter);
+        }
+    }
+
+    /**
+     * Seconds until a slot frees up: when the earliest active credential expires, at most until the
+     * next reset of the counters
+     */
+    private long retryAfter(String issuer, String username) {
+        long retryAfter = RESET_INTERVAL;
+        if (userRepository != null) {
+            long now = System.currentTimeMillis();
+            for (User user : userRepository.findActiveByIdentity(issuer, username, null, null, maxActive)) {
+                if (user.getDbValidUntil() != null) {
+                    long wait = TimeUnit.MILLISECONDS.toSeconds(user.getDbValidUntil().getTime() - now) + 1;
+                    retryAfter = Math.min(retryAfter, wait);
+                }
+            }
+        }
+
+        return Math.max(1, retryAfter);
+    }
+
+    private AtomicInteger counter(String issuer, String username) {
+        return active.computeIfAbsent(key(issuer, username), k ->
+            new AtomicInteger(userRepository != null ? userRepository.countActiveByIdentity(issuer, username) : 0)
+        );
+    }
+
+    private static String key(String issuer, String username) {
+        return (issuer != null ? issuer : "") + SEPARATOR + username;
+    }
+}
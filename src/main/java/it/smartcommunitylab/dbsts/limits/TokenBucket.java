@@ -0,0 +1,71 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.limits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.util.Assert;
+
+/**
+ * Lock-free token bucket: state is swapped atomically via CAS
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    //tokens per nanosecond
+    private final double refillRate;
+
+    private final AtomicReference<State> state;
+
+    public TokenBucket(int capacity, double tokensPerSecond) {
+        Assert.isTrue(capacity > 0, "capacity must be positive");
+        Assert.isTrue(tokensPerSecond > 0, "rate must be positive");
+
+        this.capacity = capacity;
+        this.refillRate = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+    }
+
+    /**
+     * Try to consume a token, returns 0 on success or the nanoseconds to wait for the next token
+     */
+    public long tryConsume() {
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double tokens = Math.min(capacity, current.tokens() + (now - current.timestamp()) * refillRate);
+
+            if (tokens < 1) {
+                return (long) Math.ceil((1 - tokens) / refillRate);
+            }
+
+            if (state.compareAndSet(current, new State(tokens - 1, now))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * A bucket is idle when fully refilled, it can be discarded without losing state
+     */
+    public boolean isIdle() {
+        State current = state.get();
+        return current.tokens() + (System.nanoTime() - current.timestamp()) * refillRate >= capacity;
+    }
+
+    private record State(double tokens, long timestamp) {}
+}
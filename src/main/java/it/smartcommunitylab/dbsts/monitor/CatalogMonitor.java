@@ -0,0 +1,150 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.monitor;
+
+import it.smartcommunitylab.dbsts.db.DbManager;
+import it.smartcommunitylab.dbsts.pool.AdapterPool;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Samples the growth of postgresql role catalogs due to sts roles, and sessions
+ * blocked on role DDL, to warn before catalog bloat hurts the whole cluster.
+ */
+@Slf4j
+@Component
+public class CatalogMonitor {
+
+    private static final String ROLES_SQL = "SELECT count(*) FROM pg_roles";
+    private static final String STS_ROLES_SQL = "SELECT count(*) FROM pg_roles WHERE rolname ~ ?";
+    private static final String STS_MEMBERSHIPS_SQL =
+        "SELECT count(*) FROM pg_auth_members m JOIN pg_roles r ON r.oid = m.member WHERE r.rolname ~ ?";
+    private static final String STS_SETTINGS_SQL =
+        "SELECT count(*) FROM pg_db_role_setting s JOIN pg_roles r ON r.oid = s.setrole WHERE r.rolname ~ ?";
+    private static final String CATALOG_SIZES_SQL =
+        "SELECT c.relname, pg_total_relation_size(c.oid) AS size FROM pg_class c " +
+        "WHERE c.relnamespace = 'pg_catalog'::regnamespace AND c.relname IN ('pg_authid', 'pg_auth_members', 'pg_db_role_setting')";
+    private static final String BLOCKED_DDL_SQL =
+        "SELECT count(*) AS blocked, COALESCE(max(EXTRACT(EPOCH FROM (now() - query_start)) * 1000), 0)::bigint AS wait " +
+        "FROM pg_stat_activity WHERE wait_event_type = 'Lock' AND query ~* '^\\s*((CREATE|ALTER|DROP)\\s+ROLE|GRANT|REVOKE|DO)'";
+
+    private final StatementMetrics statementMetrics;
+
+    private JdbcTemplate jdbcTemplate;
+    private boolean enabled = false;
+
+    //warn when sts roles exceed this count, 0 disables
+    private long maxRoles = 10000;
+
+    private volatile CatalogStatus status;
+
+    public CatalogMonitor(StatementMetrics statementMetrics) {
+        this.statementMetrics = statementMetrics;
+    }
+
+    @Autowired(required = false)
+    public void setAdapterPool(AdapterPool adapterPool) {
+        if (adapterPool != null) {
+            this.jdbcTemplate = new JdbcTemplate(adapterPool.getDataSource());
+        }
+    }
+
+    @Autowired
+    public void setEnabled(
+        @Value("${sts.monitor.enabled}") Boolean enabled,
+        @Value("${adapter.connection.platform}") String platform
+    ) {
+        //catalog queries are postgresql specific
+        this.enabled = Boolean.TRUE.equals(enabled) && "postgresql".equals(platform);
+    }
+
+    @Autowired
+    public void setMaxRoles(@Value("${sts.monitor.max-roles}") Long maxRoles) {
+        if (maxRoles != null && maxRoles >= 0) {
+            this.maxRoles = maxRoles;
+        }
+    }
+
+    public void sample() {
+        if (!enabled || jdbcTemplate == null) {
+            return;
+        }
+
+        log.debug("sample role catalogs");
+        try {
+            String pattern = DbManager.USERNAME_PATTERN;
+
+            Map<String, Long> sizes = new HashMap<>();
+            jdbcTemplate.query(CATALOG_SIZES_SQL, rs -> {
+                sizes.put(rs.getString("relname"), rs.getLong("size"));
+            });
+
+            CatalogStatus.CatalogStatusBuilder builder = CatalogStatus.builder()
+                .sampledAt(Instant.now())
+                .roles(jdbcTemplate.queryForObject(ROLES_SQL, Long.class))
+                .stsRoles(jdbcTemplate.queryForObject(STS_ROLES_SQL, Long.class, pattern))
+                .stsMemberships(jdbcTemplate.queryForObject(STS_MEMBERSHIPS_SQL, Long.class, pattern))
+                .stsSettings(jdbcTemplate.queryForObject(STS_SETTINGS_SQL, Long.class, pattern))
+                .catalogSizes(sizes);
+
+            jdbcTemplate.query(BLOCKED_DDL_SQL, rs -> {
+                builder.blockedDdl(rs.getLong("blocked")).blockedMaxMs(rs.getLong("wait"));
+            });
+
+            CatalogStatus s = builder.build();
+            if (maxRoles > 0 && s.getStsRoles() != null && s.getStsRoles() > maxRoles) {
+                log.warn("role catalog pressure: {} sts roles over {}", s.getStsRoles(), maxRoles);
+            }
+            if (s.getBlockedDdl() != null && s.getBlockedDdl() > 0) {
+                log.warn("{} sessions blocked on role ddl, longest {} ms", s.getBlockedDdl(), s.getBlockedMaxMs());
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("catalog status: {}", s);
+            }
+
+            this.status = s;
+        } catch (RuntimeException e) {
+            log.error("Error sampling role catalogs: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Last catalog sample along with current statement timings
+     */
+    public CatalogStatus status() {
+        CatalogStatus s = status;
+        CatalogStatus.CatalogStatusBuilder builder = s != null
+            ? CatalogStatus.builder()
+                .sampledAt(s.getSampledAt())
+                .roles(s.getRoles())
+                .stsRoles(s.getStsRoles())
+                .stsMemberships(s.getStsMemberships())
+                .stsSettings(s.getStsSettings())
+                .catalogSizes(s.getCatalogSizes())
+                .blockedDdl(s.getBlockedDdl())
+                .blockedMaxMs(s.getBlockedMaxMs())
+            : CatalogStatus.builder();
+
+        return builder.statements(statementMetrics.status()).build();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.monitor;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CatalogStatus implements Serializable {
+
+    @JsonProperty("sampled_at")
+    private Instant sampledAt;
+
+    //all roles and roles generated by the sts
+    @JsonProperty("roles")
+    private Long roles;
+
+    @JsonProperty("sts_roles")
+    private Long stsRoles;
+
+    //catalog rows owned by sts roles
+    @JsonProperty("sts_memberships")
+    private Long stsMemberships;
+
+    @JsonProperty("sts_settings")
+    private Long stsSettings;
+
+    //total size in bytes of role catalogs
+    @JsonProperty("catalog_sizes")
+    private Map<String, Long> catalogSizes;
+
+    //sessions waiting on locks while running role ddl
+    @JsonProperty("blocked_ddl")
+    private Long blockedDdl;
+
+    @JsonProperty("blocked_max_ms")
+    private Long blockedMaxMs;
+
+    @JsonProperty("statements")
+    private List<StatementStatus> statements;
+}
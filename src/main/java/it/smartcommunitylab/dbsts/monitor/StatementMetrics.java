@@ -0,0 +1,109 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.monitor;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timings of statements sent by the adapter, grouped by kind (e.g. CREATE ROLE, GRANT).
+ * Slow statements are logged, as role DDL slows down mostly when waiting on catalog locks.
+ */
+@Slf4j
+@Component
+public class StatementMetrics {
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    //statements slower than this (ms) are logged, 0 disables
+    private long slowThreshold = 1000;
+
+    @Autowired
+    public void setSlowThreshold(@Value("${sts.monitor.slow-statement}") Long slowThreshold) {
+        if (slowThreshold != null && slowThreshold >= 0) {
+            this.slowThreshold = slowThreshold;
+        }
+    }
+
+    public void record(String sql, long nanos, boolean error) {
+        String kind = kind(sql);
+        Stats s = stats.computeIfAbsent(kind, k -> new Stats());
+        s.count.increment();
+        s.nanos.add(nanos);
+        s.max.accumulateAndGet(nanos, Math::max);
+        if (error) {
+            s.errors.increment();
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (slowThreshold > 0 && millis >= slowThreshold) {
+            log.warn("slow {} statement: {} ms", kind, millis);
+        }
+    }
+
+    public List<StatementStatus> status() {
+        return stats
+            .entrySet()
+            .stream()
+            .map(e -> {
+                Stats s = e.getValue();
+                long count = s.count.sum();
+                return StatementStatus.builder()
+                    .kind(e.getKey())
+                    .count(count)
+                    .errors(s.errors.sum())
+                    .avgMs(count > 0 ? (s.nanos.sum() / (double) count) / TimeUnit.MILLISECONDS.toNanos(1) : 0)
+                    .maxMs(s.max.get() / (double) TimeUnit.MILLISECONDS.toNanos(1))
+                    .build();
+            })
+            .sorted(Comparator.comparing(StatementStatus::getKind))
+            .toList();
+    }
+
+    private static String kind(String sql) {
+        if (sql == null) {
+            return "UNKNOWN";
+        }
+
+        //first keyword, plus the object type for CREATE/ALTER/DROP
+        String[] tokens = sql.trim().toUpperCase(Locale.ROOT).split("\\s+", 3);
+        String first = tokens[0];
+        if (tokens.length > 1 && ("CREATE".equals(first) || "ALTER".equals(first) || "DROP".equals(first))) {
+            return first + " " + tokens[1];
+        }
+
+        return first;
+    }
+
+    private static class Stats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.monitor;
+
+import it.smartcommunitylab.dbsts.deadline.Deadline;
+import it.smartcommunitylab.dbsts.deadline.DeadlineExceededException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * JdbcTemplate recording the duration of raw statements and batches.
+ * Under a request deadline the query timeout is bounded by the remaining time,
+ * raw statements and batches are also cancelled as soon as the deadline passes.
+ */
+public class TimedJdbcTemplate extends JdbcTemplate {
+
+    private static final String BATCH = "BATCH";
+
+    //set while running raw statements and batches, the only paths which unwatch on completion
+    private static final ThreadLocal<Boolean> WATCHING = new ThreadLocal<>();
+
+    private StatementMetrics metrics;
+
+    public TimedJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public void setMetrics(StatementMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            long remaining = deadline.remaining();
+            if (remaining <= 0) {
+                throw new DeadlineExceededException();
+            }
+
+            //driver timeouts have a granularity of seconds, cancel covers the rest
+            int seconds = (int) Math.ceil(remaining / 1000d);
+            if (stmt.getQueryTimeout() <= 0 || seconds < stmt.getQueryTimeout()) {
+                stmt.setQueryTimeout(seconds);
+            }
+            if (Boolean.TRUE.equals(WATCHING.get())) {
+                deadline.watch(stmt);
+            }
+        }
+    }
+
+    @Override
+    public void execute(String sql) throws DataAccessException {
+        timed(sql, () -> {
+            super.execute(sql);
+            return null;
+        });
+    }
+
+    @Override
+    public int[] batchUpdate(String... sql) throws DataAccessException {
+        return timed(BATCH, () -> super.batchUpdate(sql));
+    }
+
+    private <T> T timed(String kind, Supplier<T> action) {
+        WATCHING.set(Boolean.TRUE);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            T result = action.get();
+            error = false;
+            return result;
+        } finally {
+            WATCHING.remove();
+            unwatch();
+            if (metrics != null) {
+                metrics.record(kind, System.nanoTime() - start, error);
+            }
+        }
+    }
+
+    private void unwatch() {
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.unwatch();
+        }
+    }
+}
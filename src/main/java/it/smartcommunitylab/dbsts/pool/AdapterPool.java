@@ -0,0 +1,133 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Connection pool for the database adapter. The pool is warmed up to its minimum idle
+ * size on startup, so that first exchanges don't pay for connection setup, while idle
+ * connections are validated in background (keepalive) and evicted when dead.
+ */
+@Slf4j
+public class AdapterPool implements InitializingBean, DisposableBean {
+
+    private final HikariDataSource dataSource;
+    private final PoolMetricsTracker metrics = new PoolMetricsTracker();
+
+    private boolean warmUp = true;
+
+    public AdapterPool(HikariDataSource dataSource) {
+        Assert.notNull(dataSource, "datasource is required");
+        this.dataSource = dataSource;
+
+        //must be registered before the pool starts
+        this.dataSource.setMetricsTrackerFactory((name, stats) -> metrics);
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        log.info(
+            "adapter pool {}: max {} min idle {} keepalive {} ms",
+            dataSource.getPoolName(),
+            dataSource.getMaximumPoolSize(),
+            dataSource.getMinimumIdle(),
+            dataSource.getKeepaliveTime()
+        );
+
+        if (warmUp) {
+            warmUp();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        dataSource.close();
+    }
+
+    /**
+     * Open connections up to the minimum idle size, failures are not fatal
+     */
+    public void warmUp() {
+        int size = Math.min(dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize());
+        if (size <= 0) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < size; i++) {
+                connections.add(dataSource.getConnection());
+            }
+
+            log.info("adapter pool warmed up with {} connections in {} ms", size, System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            log.warn("adapter pool warm up failed after {} connections: {}", connections.size(), e.getMessage());
+        } finally {
+            //return to the pool as idle
+            for (Connection c : connections) {
+                try {
+                    c.close();
+                } catch (SQLException e) {
+                    //ignore
+                }
+            }
+        }
+    }
+
+    public PoolStatus status() {
+        PoolStatus.PoolStatusBuilder status = PoolStatus.builder()
+            .name(dataSource.getPoolName())
+            .max(dataSource.getMaximumPoolSize())
+            .created(metrics.getCreated())
+            .acquired(metrics.getAcquired())
+            .acquireAvgMs(metrics.getAcquireAvgMillis())
+            .acquireMaxMs(metrics.getAcquireMaxMillis())
+            .timeouts(metrics.getTimeouts());
+
+        //not available until the pool is started
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            status
+                .active(pool.getActiveConnections())
+                .idle(pool.getIdleConnections())
+                .total(pool.getTotalConnections())
+                .pending(pool.getThreadsAwaitingConnection());
+        }
+
+        return status.build();
+    }
+}
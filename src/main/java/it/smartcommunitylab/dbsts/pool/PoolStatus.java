@@ -0,0 +1,70 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pool;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PoolStatus implements Serializable {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("active")
+    private Integer active;
+
+    @JsonProperty("idle")
+    private Integer idle;
+
+    @JsonProperty("total")
+    private Integer total;
+
+    @JsonProperty("pending")
+    private Integer pending;
+
+    @JsonProperty("max")
+    private Integer max;
+
+    @JsonProperty("created")
+    private Long created;
+
+    @JsonProperty("acquired")
+    private Long acquired;
+
+    @JsonProperty("acquire_avg_ms")
+    private Double acquireAvgMs;
+
+    @JsonProperty("acquire_max_ms")
+    private Double acquireMaxMs;
+
+    @JsonProperty("timeouts")
+    private Long timeouts;
+}
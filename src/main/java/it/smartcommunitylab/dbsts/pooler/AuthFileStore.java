@@ -0,0 +1,203 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Keeps a pgbouncer auth_file (userlist.txt) in sync. Entries not issued by the STS
+ * are preserved. Concurrent changes are coalesced: writers wait for a single rewrite
+ * covering all the changes made so far, followed by a RELOAD on the admin console.
+ * Every rewrite re-reads the file under an exclusive file lock and applies only local
+ * changes, so replicas sharing the file never overwrite each other's entries.
+ */
+@Slf4j
+public class AuthFileStore implements PoolerAuthStore {
+
+    private static final Pattern ENTRY_PATTERN = Pattern.compile("^\"((?:[^\"]|\"\")*)\"\\s+\"((?:[^\"]|\"\")*)\".*$");
+
+    private final Path path;
+    private final String adminUrl;
+    private final String adminUser;
+    private final String adminPassword;
+
+    private final Path lockPath;
+
+    //changes not yet written, empty for removals
+    private final Map<String, Optional<String>> changes = new ConcurrentHashMap<>();
+
+    //group commit of file rewrites
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicLong version = new AtomicLong();
+    private long flushed = 0;
+
+    public AuthFileStore(PoolerProperties properties) {
+        Assert.hasText(properties.getAuthFile(), "auth file is required");
+        this.path = Path.of(properties.getAuthFile());
+        this.lockPath = path.resolveSibling(path.getFileName() + ".lock");
+        this.adminUrl = properties.getAdminUrl();
+        this.adminUser = properties.getAdminUser();
+        this.adminPassword = properties.getAdminPassword();
+    }
+
+    @Override
+    public void put(String username, String secret, Instant validUntil) {
+        //auth file has no validity, expiration is enforced by the server
+        changes.put(username, Optional.of(secret));
+        flush(version.incrementAndGet());
+    }
+
+    @Override
+    public void renew(String username, Instant validUntil) {
+        //nothing to do
+    }
+
+    @Override
+    public void remove(Collection<String> usernames) {
+        if (usernames == null || usernames.isEmpty()) {
+            return;
+        }
+
+        usernames.forEach(u -> changes.put(u, Optional.empty()));
+        flush(version.incrementAndGet());
+    }
+
+    private Map<String, String> read() throws IOException {
+        Map<String, String> entries = new TreeMap<>();
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                Matcher m = ENTRY_PATTERN.matcher(line.trim());
+                if (m.matches()) {
+                    entries.put(unquote(m.group(1)), unquote(m.group(2)));
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private void flush(long target) {
+        flushLock.lock();
+        try {
+            if (flushed >= target) {
+                //already written by a concurrent flush
+                return;
+            }
+
+            long current = version.get();
+            update();
+            reload();
+            flushed = current;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void update() {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            //exclusive across replicas sharing the file, released with the channel
+            try (
+                FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock lock = lockChannel.lock()
+            ) {
+                //merge local changes into the current content
+                Map<String, String> entries = read();
+                Map<String, Optional<String>> applied = new HashMap<>(changes);
+                applied.forEach((u, s) -> {
+                    if (s.isPresent()) {
+                        entries.put(u, s.get());
+                    } else {
+                        entries.remove(u);
+                    }
+                });
+
+                StringBuilder sb = new StringBuilder();
+                entries.forEach((u, s) ->
+                    sb.append('"').append(quote(u)).append("\" \"").append(quote(s)).append("\"\n")
+                );
+
+                //replace atomically, the pooler never reads a partial file
+                Path tmp = Files.createTempFile(parent, ".userlist", ".tmp");
+                Files.writeString(tmp, sb.toString(), StandardCharsets.UTF_8);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                //keep changes made meanwhile, unless equal to the written ones
+                applied.forEach(changes::remove);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("error writing auth file", e);
+        }
+    }
+
+    private void reload() {
+        if (!StringUtils.hasText(adminUrl)) {
+            return;
+        }
+
+        //admin console accepts only simple queries
+        try (
+            Connection connection = DriverManager.getConnection(adminUrl, adminUser, adminPassword);
+            Statement statement = connection.createStatement()
+        ) {
+            statement.execute("RELOAD");
+        } catch (SQLException e) {
+            //pooler would reject the new entries, callers must compensate
+            log.error("Error reloading pooler: {}", e.getMessage());
+            throw new DataAccessResourceFailureException("error reloading pooler", e);
+        }
+    }
+
+    private static String quote(String value) {
+        return value.replace("\"", "\"\"");
+    }
+
+    private static String unquote(String value) {
+        return value.replace("\"\"", "\"");
+    }
+}
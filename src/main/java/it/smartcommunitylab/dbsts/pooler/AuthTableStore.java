@@ -0,0 +1,84 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps a table readable by a pgbouncer auth_query in sync, for example with
+ * auth_query = SELECT usename, passwd FROM pgbouncer_users WHERE usename = $1 AND (valid_until IS NULL OR valid_until > now())
+ */
+@Slf4j
+public class AuthTableStore implements PoolerAuthStore {
+
+    private static final String TABLE_PATTERN = "^[a-zA-Z_][a-zA-Z0-9_]*(\\.[a-zA-Z_][a-zA-Z0-9_]*)?$";
+
+    private static final String CREATE_SQL =
+        "CREATE TABLE IF NOT EXISTS %s (usename VARCHAR(64) NOT NULL PRIMARY KEY, passwd TEXT NOT NULL, valid_until TIMESTAMPTZ)";
+    private static final String UPSERT_SQL =
+        "INSERT INTO %s (usename, passwd, valid_until) VALUES (?, ?, ?) ON CONFLICT (usename) DO UPDATE SET passwd = EXCLUDED.passwd, valid_until = EXCLUDED.valid_until";
+    private static final String RENEW_SQL = "UPDATE %s SET valid_until = ? WHERE usename = ?";
+    private static final String DELETE_SQL = "DELETE FROM %s WHERE usename IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+
+    public AuthTableStore(JdbcTemplate jdbcTemplate, String table) {
+        Assert.notNull(jdbcTemplate, "jdbc is required");
+        Assert.isTrue(table != null && table.matches(TABLE_PATTERN), "invalid auth table name");
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+
+        log.info("sync pooler auth table {}", table);
+        jdbcTemplate.execute(String.format(CREATE_SQL, table));
+    }
+
+    @Override
+    public void put(String username, String secret, Instant validUntil) {
+        jdbcTemplate.update(
+            String.format(UPSERT_SQL, table),
+            new Object[] { username, secret, validUntil != null ? Timestamp.from(validUntil) : null },
+            new int[] { Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP_WITH_TIMEZONE }
+        );
+    }
+
+    @Override
+    public void renew(String username, Instant validUntil) {
+        jdbcTemplate.update(
+            String.format(RENEW_SQL, table),
+            new Object[] { validUntil != null ? Timestamp.from(validUntil) : null, username },
+            new int[] { Types.TIMESTAMP_WITH_TIMEZONE, Types.VARCHAR }
+        );
+    }
+
+    @Override
+    public void remove(Collection<String> usernames) {
+        if (usernames == null || usernames.isEmpty()) {
+            return;
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(usernames.size(), "?"));
+        jdbcTemplate.update(String.format(DELETE_SQL, table, placeholders), usernames.toArray());
+    }
+}
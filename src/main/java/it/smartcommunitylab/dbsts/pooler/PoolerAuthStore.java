@@ -0,0 +1,32 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import java.time.Instant;
+import java.util.Collection;
+import org.springframework.lang.Nullable;
+
+/**
+ * Auth source read by the connection pooler
+ */
+public interface PoolerAuthStore {
+    void put(String username, String secret, @Nullable Instant validUntil);
+
+    void renew(String username, @Nullable Instant validUntil);
+
+    void remove(Collection<String> usernames);
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import it.smartcommunitylab.dbsts.db.DbAdapter;
+import it.smartcommunitylab.dbsts.db.DbUser;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+/**
+ * Adapter decorator keeping the pooler auth source in sync with issued roles.
+ * Roles are created with a precomputed secret, stored as is by the server and
+ * shared with the pooler: clients authenticate to the pooler with the plain
+ * password, and the pooler to the server with the same secret.
+ */
+@Slf4j
+public class PoolerDbAdapter implements DbAdapter {
+
+    private final DbAdapter adapter;
+    private final PoolerAuthStore store;
+    private final String format;
+
+    public PoolerDbAdapter(DbAdapter adapter, PoolerAuthStore store, String format) {
+        Assert.notNull(adapter, "adapter is required");
+        Assert.notNull(store, "auth store is required");
+        this.adapter = adapter;
+        this.store = store;
+        this.format = format != null ? format : RoleSecrets.SCRAM;
+    }
+
+    @Override
+    public DbUser create(DbUser user) {
+        String password = user.getPassword();
+        String secret = RoleSecrets.encode(format, user.getUsername(), password);
+
+        DbUser created = adapter.create(
+            //keep identity and every other field, only the secret differs
+            user.toBuilder().password(secret).build()
+        );
+
+        try {
+            store.put(created.getUsername(), secret, created.getValidUntil());
+        } catch (RuntimeException e) {
+            //role unusable via pooler, drop it
+            log.error("Error syncing pooler for {}: {}", created.getUsername(), e.getMessage());
+            adapter.delete(created);
+            throw e;
+        }
+
+        //return the plain password to the client
+        created.setPassword(password);
+        return created;
+    }
+
+    @Override
+    public void delete(DbUser user) {
+        adapter.delete(user);
+        store.remove(Collections.singleton(user.getUsername()));
+    }
+
+    @Override
+    public void delete(Collection<DbUser> users) {
+        adapter.delete(users);
+        store.remove(users.stream().map(DbUser::getUsername).toList());
+    }
+
+    @Override
+    public DbUser renew(DbUser user) {
+        DbUser renewed = adapter.renew(user);
+        store.renew(renewed.getUsername(), renewed.getValidUntil());
+        return renewed;
+    }
+
+    @Override
+    public DbUser rotate(DbUser user) {
+        String password = user.getPassword();
+        String secret = RoleSecrets.encode(format, user.getUsername(), password);
+
+        DbUser rotated = adapter.rotate(
+            //keep identity and every other field, only the secret differs
+            user.toBuilder().password(secret).build()
+        );
+
+        //the role is persistent: on failure keep it, the secret was never handed out
+        store.put(rotated.getUsername(), secret, rotated.getValidUntil());
+
+        rotated.setPassword(password);
+        return rotated;
+    }
+
+    @Override
+    public void disable(DbUser user) {
+        //entries expire with valid until and are replaced by the next rotation
+        adapter.disable(user);
+    }
+
+    @Override
+    public List<DbUser> list(String pattern, String after, int limit) {
+        return adapter.list(pattern, after, limit);
+    }
+
+    @Override
+    public Set<String> exists(Collection<String> usernames) {
+        return adapter.exists(usernames);
+    }
+
+    @Override
+    public List<DbUser> expired(String after, int limit) {
+        return adapter.expired(after, limit);
+    }
+
+    @Override
+    public Set<String> roles() {
+        return adapter.roles();
+    }
+}
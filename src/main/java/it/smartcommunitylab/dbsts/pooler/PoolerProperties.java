@@ -0,0 +1,59 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "adapter.pooler", ignoreUnknownFields = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PoolerProperties {
+
+    public static final String AUTH_FILE = "file";
+    public static final String AUTH_TABLE = "table";
+
+    private boolean enabled = false;
+
+    //pooler endpoint returned to clients
+    private String host;
+    private Integer port;
+
+    //auth source kept in sync: file or table
+    private String auth = AUTH_TABLE;
+
+    //secret format: scram, md5 or plain
+    private String format = RoleSecrets.SCRAM;
+
+    //userlist file for auth_file
+    private String authFile = "./data/userlist.txt";
+
+    //table for auth_query, in the adapter database
+    private String authTable = "pgbouncer_users";
+
+    //optional admin console, to RELOAD after auth file changes
+    private String adminUrl;
+    private String adminUser;
+    private String adminPassword;
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.smartcommunitylab.dbsts.pooler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Password secrets in the formats accepted both by postgresql (as role password)
+ * and by pgbouncer (auth file or auth query). Setting the very same secret on both
+ * sides lets the pooler authenticate to the server without knowing the password.
+ */
+public final class RoleSecrets {
+
+    public static final String SCRAM = "scram";
+    public static final String MD5 = "md5";
+    public static final String PLAIN = "plain";
+
+    private static final int SCRAM_ITERATIONS = 4096;
+    private static final int SCRAM_SALT_LENGTH = 16;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private RoleSecrets() {}
+
+    public static String encode(String format, String username, String password) {
+        if (SCRAM.equals(format)) {
+            return scram(password);
+        } else if (MD5.equals(format)) {
+            return md5(username, password);
+        } else if (PLAIN.equals(format)) {
+            return password;
+        }
+
+        throw new IllegalArgumentException("invalid secret format: " + format);
+    }
+
+    public static String md5(String username, String password) {
+        return "md5" + DigestUtils.md5DigestAsHex((password + username).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * SCRAM-SHA-256 verifier as stored by postgresql, passwords are expected to be plain ascii
+     */
+    public static String scram(String password) {
+        byte[] salt = new byte[SCRAM_SALT_LENGTH];
+        random.nextBytes(salt);
+
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, SCRAM_ITERATIONS, 256);
+            byte[] salted = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+
+            byte[] clientKey = hmac(salted, "Client Key");
+            byte[] storedKey = MessageDigest.getInstance("SHA-256").digest(clientKey);
+            byte[] serverKey = hmac(salted, "Server Key");
+
+            Base64.Encoder b64 = Base64.getEncoder();
+            return (
+                "SCRAM-SHA-256$" +
+                SCRAM_ITERATIONS +
+                ":" +
+                b64.encodeToString(salt) +
+                "$" +
+                b64.encodeToString(storedKey) +
+                ":" +
+                b64.encodeToString(serverKey)
+            );
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("scram not supported: " + e.getMessage());
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -16,22 +16,38 @@
 
 package it.smartcommunitylab.dbsts.postgresql;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import it.smartcommunitylab.dbsts.db.DbAdapter;
+import it.smartcommunitylab.dbsts.db.DbManager;
 import it.smartcommunitylab.dbsts.db.DbUser;
+import it.smartcommunitylab.dbsts.deadline.Deadline;
+import it.smartcommunitylab.dbsts.monitor.StatementMetrics;
+import it.smartcommunitylab.dbsts.monitor.TimedJdbcTemplate;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.sql.DataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.DataAccessException;
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 @Slf4j
@@ -47,25 +63,78 @@ public class PostgresqlAdapter implements DbAdapter {
     private static final String REVOKE_CONNECT_SQL = "REVOKE CONNECT ON DATABASE %s FROM %s";
     private static final String REVOKE_ROLE_SQL = "REVOKE %s FROM %s;";
 
+    private static final String RENEW_SQL = "ALTER ROLE %s VALID UNTIL %s";
+
     private static final String DISABLE_SQL = "ALTER USER %s WITH NOLOGIN";
 
+    //stable roles: a single statement per exchange, login disabled only once expired
+    private static final String ROTATE_SQL = "ALTER ROLE %s WITH LOGIN PASSWORD %s VALID UNTIL %s";
+    private static final String DISABLE_EXPIRED_SQL =
+        "DO $$ BEGIN IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = %s AND rolvaliduntil <= now()) " +
+        "THEN ALTER ROLE %s WITH NOLOGIN; END IF; END $$";
+    private static final String UNDEFINED_OBJECT = "42704";
+    private static final String DUPLICATE_OBJECT = "42710";
+
     private static final String DROP_SQL = "DROP ROLE IF EXISTS %s";
 
-    private final JdbcTemplate jdbcTemplate;
-    private final DateFormat dateFormatter;
+    private static final String GROUP_PREFIX = "sts_";
+    //concurrent creations may also fail on the unique index of pg_authid
+    private static final String CREATE_GROUP_SQL =
+        "DO $$ BEGIN CREATE ROLE %s NOLOGIN %s; EXCEPTION WHEN duplicate_object OR unique_violation THEN NULL; END $$";
+
+    //only roles tagged by the sts, names alone may match roles created by humans, stable roles excluded
+    private static final String LIST_SQL =
+        "SELECT r.rolname, r.rolvaliduntil, " +
+        "(SELECT string_agg(db.datname, ',') FROM pg_database db, aclexplode(db.datacl) a WHERE a.grantee = r.oid AND a.privilege_type = 'CONNECT') AS databases, " +
+        "(SELECT string_agg(g.rolname, ',') FROM pg_auth_members m JOIN pg_roles g ON g.oid = m.roleid WHERE m.member = r.oid) AS roles " +
+        "FROM pg_roles r JOIN pg_shdescription d ON d.objoid = r.oid AND d.classoid = 'pg_authid'::regclass " +
+        "WHERE d.description LIKE 'sts:%' AND d.description NOT LIKE '%\"mode\":\"stable\"%' " +
+        "AND r.rolcanlogin AND NOT r.rolsuper AND r.rolname ~ ? AND r.rolname > ? " +
+        "ORDER BY r.rolname LIMIT ?";
+    //roles tagged on creation, login still enabled past validity
+    private static final String TAG_PREFIX = "sts:";
+    private static final String STABLE_MODE = "stable";
+    private static final String COMMENT_SQL = "COMMENT ON ROLE %s IS %s";
+    private static final String EXPIRED_SQL =
+        "SELECT r.rolname, r.rolvaliduntil, d.description, " +
+        "(SELECT string_agg(db.datname, ',') FROM pg_database db, aclexplode(db.datacl) a WHERE a.grantee = r.oid AND a.privilege_type = 'CONNECT') AS databases, " +
+        "(SELECT string_agg(g.rolname, ',') FROM pg_auth_members m JOIN pg_roles g ON g.oid = m.roleid WHERE m.member = r.oid) AS roles " +
+        "FROM pg_roles r JOIN pg_shdescription d ON d.objoid = r.oid AND d.classoid = 'pg_authid'::regclass " +
+        "WHERE d.description LIKE 'sts:%' AND r.rolcanlogin AND r.rolvaliduntil < now() AND r.rolname > ? " +
+        "ORDER BY r.rolname LIMIT ?";
+    private static final String EXISTS_SQL = "SELECT rolname FROM pg_roles WHERE rolname IN (%s)";
+    //any role the server would accept in IN ROLE, except the ones issued by the sts (groups and users)
+    private static final String ROLES_SQL = "SELECT rolname FROM pg_roles WHERE rolname !~ ? AND rolname !~ ?";
+
+    private final TimedJdbcTemplate jdbcTemplate;
+    private final ObjectMapper mapper;
+    private final DateTimeFormatter dateFormatter;
 
     private final PostgresqlProperties properties;
     private Set<String> databases;
+    private boolean tagRoles;
+
+    //group roles already ensured
+    private final Set<String> groups = ConcurrentHashMap.newKeySet();
 
-    public PostgresqlAdapter(DataSourceProperties dataSourceProperties, PostgresqlProperties properties) {
+    public PostgresqlAdapter(
+        DataSourceProperties dataSourceProperties,
+        DataSource dataSource,
+        PostgresqlProperties properties
+    ) {
         Assert.notNull(dataSourceProperties, "properties are required");
         Assert.hasText(dataSourceProperties.getUrl(), "url is required");
+        Assert.notNull(dataSource, "datasource is required");
 
         this.properties = properties;
+        this.tagRoles = properties.isTagRoles();
+        this.jdbcTemplate = new TimedJdbcTemplate(dataSource);
+        this.mapper = new ObjectMapper();
 
-        //create dedicated dataSource and template
-        DataSource dataSource = dataSourceProperties.initializeDataSourceBuilder().build();
-        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        //bound DDL waiting on catalog locks, the driver cancels the statement on timeout
+        if (properties.getStatementTimeout() > 0) {
+            this.jdbcTemplate.setQueryTimeout(properties.getStatementTimeout());
+        }
 
         if (StringUtils.hasText(properties.getDatabase())) {
             //use selected
@@ -81,11 +150,24 @@ public class PostgresqlAdapter implements DbAdapter {
             }
         }
 
-        this.dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZ");
+        //thread-safe formatter, shared across concurrent requests
+        this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssZ").withZone(ZoneId.systemDefault());
+    }
+
+    public void setStatementMetrics(StatementMetrics metrics) {
+        this.jdbcTemplate.setMetrics(metrics);
+    }
+
+    public void setTagRoles(boolean tagRoles) {
+        this.tagRoles = tagRoles;
     }
 
     @Override
     public DbUser create(DbUser user) {
+        return create(user, false);
+    }
+
+    private DbUser create(DbUser user, boolean stable) {
         if (databases != null && user.getDatabase() != null && !databases.contains(user.getDatabase())) {
             throw new IllegalArgumentException("invalid user: wrong database");
         }
@@ -100,7 +182,7 @@ public class PostgresqlAdapter implements DbAdapter {
         String inRole = user.getRoles() != null && !user.getRoles().isEmpty()
             ? user.getRoles().iterator().next()
             : null;
-        String until = user.getValidUntil() != null ? dateFormatter.format(Date.from(user.getValidUntil())) : null;
+        String until = user.getValidUntil() != null ? dateFormatter.format(user.getValidUntil()) : null;
 
         if (!StringUtils.hasText(role) || !StringUtils.hasText(password)) {
             throw new IllegalArgumentException("invalid user");
@@ -116,7 +198,13 @@ public class PostgresqlAdapter implements DbAdapter {
             params.add(quote(until));
         }
 
-        if (inRole != null && !inRole.isEmpty()) {
+        //resolve shared group holding connect and role membership
+        String group = properties.isGroupRoles() ? group(database, inRole) : null;
+
+        if (group != null) {
+            sql += IN_ROLE;
+            params.add(group);
+        } else if (inRole != null && !inRole.isEmpty()) {
             sql += IN_ROLE;
             params.add(inRole);
         }
@@ -127,24 +215,58 @@ public class PostgresqlAdapter implements DbAdapter {
         if (log.isTraceEnabled()) {
             log.trace("sql: {}", createSql);
         }
-        jdbcTemplate.execute(createSql);
-
-        if (database != null) {
-            String grantSql = String.format(GRANT_SQL, database, role);
-            log.debug("grant connect role for {} to {}", role, database);
-            if (log.isTraceEnabled()) {
-                log.trace("sql: {}", grantSql);
+        try {
+            jdbcTemplate.execute(createSql);
+        } catch (DataAccessException e) {
+            if (group == null || !UNDEFINED_OBJECT.equals(sqlState(e))) {
+                throw e;
             }
-            jdbcTemplate.execute(grantSql);
+
+            //group dropped outside the sts, ensure it again and retry once
+            log.warn("group role {} missing, recreate", group);
+            groups.remove(group);
+            group(database, inRole);
+            jdbcTemplate.execute(createSql);
         }
 
-        if (inRole != null) {
-            String alterSql = String.format(ALTER_ROLE_SQL, role, inRole);
-            log.debug("alter role {} to {}", role, inRole);
-            if (log.isTraceEnabled()) {
-                log.trace("sql: {}", alterSql);
+        try {
+            if (database != null && group == null) {
+                String grantSql = String.format(GRANT_SQL, database, role);
+                log.debug("grant connect role for {} to {}", role, database);
+                if (log.isTraceEnabled()) {
+                    log.trace("sql: {}", grantSql);
+                }
+                jdbcTemplate.execute(grantSql);
+            }
+
+            if (inRole != null) {
+                String alterSql = String.format(ALTER_ROLE_SQL, role, inRole);
+                log.debug("alter role {} to {}", role, inRole);
+                if (log.isTraceEnabled()) {
+                    log.trace("sql: {}", alterSql);
+                }
+                jdbcTemplate.execute(alterSql);
+            }
+
+            if (tagRoles) {
+                String commentSql = String.format(COMMENT_SQL, role, literal(tag(user, stable)));
+                log.debug("tag role {}", role);
+                if (log.isTraceEnabled()) {
+                    log.trace("sql: {}", commentSql);
+                }
+                jdbcTemplate.execute(commentSql);
             }
-            jdbcTemplate.execute(alterSql);
+        } catch (RuntimeException e) {
+            //partially provisioned, drop the role even when the deadline has passed
+            log.warn("Error provisioning role {}, drop: {}", role, e.getMessage());
+            Deadline.detached(() -> {
+                try {
+                    delete(user);
+                } catch (RuntimeException ex) {
+                    log.error("Error removing role {}: {}", role, ex.getMessage());
+                }
+            });
+            throw e;
         }
 
         return user;
@@ -152,6 +274,108 @@ public class PostgresqlAdapter implements DbAdapter {
 
     @Override
     public void delete(DbUser user) {
+        //need to raw execute query to drop roles...
+        log.debug("drop role {}", user.getUsername());
+        if (properties.isGroupRoles()) {
+            try {
+                //privileges are held by the group, drop removes memberships
+                execute(groupDeleteStatements(user));
+                return;
+            } catch (DataAccessException e) {
+                //role may hold direct grants, created before groups were enabled
+                log.debug("fallback to full drop for {}: {}", user.getUsername(), e.getMessage());
+            }
+        }
+
+        execute(deleteStatements(user));
+    }
+
+    private void execute(List<String> statements) {
+        statements.forEach(sql -> {
+            if (log.isTraceEnabled()) {
+                log.trace("sql: {}", sql);
+            }
+            jdbcTemplate.execute(sql);
+        });
+    }
+
+    @Override
+    public void delete(Collection<DbUser> users) {
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+
+        //send all statements in a single batch
+        List<String> statements = new ArrayList<>();
+        users.forEach(user ->
+            statements.addAll(properties.isGroupRoles() ? groupDeleteStatements(user) : deleteStatements(user))
+        );
+        log.debug("drop {} roles in batch", users.size());
+        if (log.isTraceEnabled()) {
+            log.trace("sql: {}", statements);
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(statements.toArray(new String[0]));
+        } catch (DataAccessException e) {
+            //fallback to single deletes to isolate failures
+            log.warn("Error in batch drop, fallback to single: {}", e.getMessage());
+            users.forEach(user -> {
+                try {
+                    delete(user);
+                } catch (DataAccessException ex) {
+                    log.error("Error removing role {}: {}", user.getUsername(), ex.getMessage());
+                }
+            });
+        }
+    }
+
+    private List<String> groupDeleteStatements(DbUser user) {
+        //safety check
+        if (databases != null && user.getDatabase() != null && !databases.contains(user.getDatabase())) {
+            throw new IllegalArgumentException("invalid user: wrong database");
+        }
+
+        String role = user.getUsername();
+        return List.of(String.format(DISABLE_SQL, role), String.format(DROP_SQL, role));
+    }
+
+    /*
+     * Group roles: a NOLOGIN role per (database, role) holds CONNECT and the membership,
+     * users join the group with a single IN ROLE clause
+     */
+    private String group(String database, String inRole) {
+        if (database == null && (inRole == null || inRole.isEmpty())) {
+            return null;
+        }
+
+        //hashed, NUL can't appear in identifiers so distinct pairs never collide
+        String key = (database != null ? database : "") + '\0' + (inRole != null ? inRole : "");
+        String name = GROUP_PREFIX + DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+
+        if (!groups.contains(name)) {
+            //idempotent, concurrent creations are ignored
+            String membership = inRole != null && !inRole.isEmpty() ? String.format(IN_ROLE, inRole) : "";
+            log.debug("ensure group role {}", name);
+            execute(List.of(String.format(CREATE_GROUP_SQL, name, membership)));
+
+            if (database != null) {
+                List<String> grant = List.of(String.format(GRANT_SQL, database, name));
+                try {
+                    execute(grant);
+                } catch (DataAccessException e) {
+                    //concurrent grants on the same database may conflict updating its acl, retry once
+                    log.debug("retry grant to group role {}: {}", name, e.getMessage());
+                    execute(grant);
+                }
+            }
+            groups.add(name);
+        }
+
+        return name;
+    }
+
+    private List<String> deleteStatements(DbUser user) {
         //safety check
         if (databases != null && user.getDatabase() != null && !databases.contains(user.getDatabase())) {
             throw new IllegalArgumentException("invalid user: wrong database");
@@ -165,41 +389,200 @@ public class PostgresqlAdapter implements DbAdapter {
             ? user.getRoles().iterator().next()
             : null;
 
-        //need to raw execute query to drop roles...
+        List<String> statements = new ArrayList<>();
         if (database != null) {
-            String revokeConnectSql = String.format(REVOKE_CONNECT_SQL, database, role);
-            log.debug("revoke connect role for {} to {}", role, database);
-            if (log.isTraceEnabled()) {
-                log.trace("sql: {}", revokeConnectSql);
-            }
-            jdbcTemplate.execute(revokeConnectSql);
+            statements.add(String.format(REVOKE_CONNECT_SQL, database, role));
         }
 
         if (inRole != null) {
-            String revokeRoleSql = String.format(REVOKE_ROLE_SQL, inRole, role);
-            log.debug("revoke role {} to {}", inRole, role);
-            if (log.isTraceEnabled()) {
-                log.trace("sql: {}", revokeRoleSql);
+            statements.add(String.format(REVOKE_ROLE_SQL, inRole, role));
+        }
+
+        statements.add(String.format(DISABLE_SQL, role));
+        statements.add(String.format(DROP_SQL, role));
+
+        return statements;
+    }
+
+    @Override
+    public DbUser renew(DbUser user) {
+        //safety check
+        if (databases != null && user.getDatabase() != null && !databases.contains(user.getDatabase())) {
+            throw new IllegalArgumentException("invalid user: wrong database");
+        }
+
+        String role = user.getUsername();
+        if (!StringUtils.hasText(role) || user.getValidUntil() == null) {
+            throw new IllegalArgumentException("invalid user");
+        }
+
+        String until = dateFormatter.format(user.getValidUntil());
+        String renewSql = String.format(RENEW_SQL, role, quote(until));
+        log.debug("renew role {} until {}", role, until);
+        if (log.isTraceEnabled()) {
+            log.trace("sql: {}", renewSql);
+        }
+        jdbcTemplate.execute(renewSql);
+
+        return user;
+    }
+
+    @Override
+    public DbUser rotate(DbUser user) {
+        //safety check
+        if (databases != null && user.getDatabase() != null && !databases.contains(user.getDatabase())) {
+            throw new IllegalArgumentException("invalid user: wrong database");
+        }
+
+        String role = user.getUsername();
+        if (!StringUtils.hasText(role) || !StringUtils.hasText(user.getPassword()) || user.getValidUntil() == null) {
+            throw new IllegalArgumentException("invalid user");
+        }
+
+        String until = dateFormatter.format(user.getValidUntil());
+        String rotateSql = String.format(ROTATE_SQL, role, quote(user.getPassword()), quote(until));
+        log.debug("rotate role {} until {}", role, until);
+        if (log.isTraceEnabled()) {
+            log.trace("sql: {}", rotateSql);
+        }
+
+        try {
+            jdbcTemplate.execute(rotateSql);
+        } catch (DataAccessException e) {
+            if (!UNDEFINED_OBJECT.equals(sqlState(e))) {
+                throw e;
             }
-            jdbcTemplate.execute(revokeRoleSql);
+
+            //first exchange for this identity
+            log.debug("role {} does not exist, create", role);
+            try {
+                create(user, true);
+            } catch (DataAccessException ex) {
+                if (!DUPLICATE_OBJECT.equals(sqlState(ex))) {
+                    throw ex;
+                }
+
+                //concurrent first exchange won the creation, rotate over it
+                jdbcTemplate.execute(rotateSql);
+            }
+        }
+
+        return user;
+    }
+
+    @Override
+    public void disable(DbUser user) {
+        String role = user.getUsername();
+        if (!StringUtils.hasText(role)) {
+            throw new IllegalArgumentException("invalid user");
         }
 
-        String disableSql = String.format(DISABLE_SQL, role);
-        log.debug("disable login to {}", role);
+        //no-op when a concurrent rotation already extended validity
+        String disableSql = String.format(DISABLE_EXPIRED_SQL, quote(role), role);
+        log.debug("disable role {}", role);
         if (log.isTraceEnabled()) {
             log.trace("sql: {}", disableSql);
         }
         jdbcTemplate.execute(disableSql);
+    }
 
-        String dropSql = String.format(DROP_SQL, role);
-        log.debug("drop role {}", role);
-        if (log.isTraceEnabled()) {
-            log.trace("sql: {}", dropSql);
+    @Override
+    public List<DbUser> list(String pattern, String after, int limit) {
+        Assert.hasText(pattern, "pattern is required");
+
+        return jdbcTemplate.query(LIST_SQL, (rs, rowNum) -> mapUser(rs), pattern, after != null ? after : "", limit);
+    }
+
+    @Override
+    public List<DbUser> expired(String after, int limit) {
+        return jdbcTemplate.query(
+            EXPIRED_SQL,
+            (rs, rowNum) -> {
+                DbUser user = mapUser(rs);
+
+                //identity from the tag, a malformed one still allows cleanup
+                String description = rs.getString("description");
+                try {
+                    JsonNode tag = mapper.readTree(description.substring(TAG_PREFIX.length()));
+                    user.setWebIssuer(tag.path("iss").asText(null));
+                    user.setWebUser(tag.path("sub").asText(null));
+                } catch (JsonProcessingException e) {
+                    log.warn("invalid tag on role {}", user.getUsername());
+                }
+
+                return user;
+            },
+            after != null ? after : "",
+            limit
+        );
+    }
+
+    private DbUser mapUser(ResultSet rs) throws SQLException {
+        Timestamp until = rs.getTimestamp("rolvaliduntil");
+        String dbs = rs.getString("databases");
+        String roles = rs.getString("roles");
+
+        //pick the first managed database the role can connect to
+        String database = null;
+        if (dbs != null) {
+            database = StringUtils.commaDelimitedListToSet(dbs)
+                .stream()
+                .filter(d -> databases == null || databases.contains(d))
+                .findFirst()
+                .orElse(null);
         }
-        jdbcTemplate.execute(dropSql);
+
+        return DbUser.builder()
+            .username(rs.getString("rolname"))
+            .database(database)
+            .roles(roles != null ? StringUtils.commaDelimitedListToSet(roles) : null)
+            .validUntil(until != null ? until.toInstant() : null)
+            .build();
+    }
+
+    /*
+     * Tag holding the web identity, validity is read from the role itself
+     */
+    private String tag(DbUser user, boolean stable) {
+        ObjectNode tag = mapper.createObjectNode();
+        if (stable) {
+            //persistent roles, outlive their audit records by design
+            tag.put("mode", STABLE_MODE);
+        }
+        tag.put("iss", user.getWebIssuer());
+        tag.put("sub", user.getWebUser());
+        tag.put("iat", Instant.now().getEpochSecond());
+
+        return TAG_PREFIX + tag.toString();
+    }
+
+    @Override
+    public Set<String> exists(Collection<String> usernames) {
+        if (usernames == null || usernames.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        String sql = String.format(EXISTS_SQL, String.join(",", Collections.nCopies(usernames.size(), "?")));
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, usernames.toArray()));
+    }
+
+    @Override
+    public Set<String> roles() {
+        return new HashSet<>(
+            jdbcTemplate.queryForList(ROLES_SQL, String.class, "^" + GROUP_PREFIX, DbManager.USERNAME_PATTERN)
+        );
+    }
+
+    private static String sqlState(DataAccessException e) {
+        return e.getMostSpecificCause() instanceof SQLException ex ? ex.getSQLState() : null;
     }
 
     private String quote(String value) {
         return "'" + value + "'";
     }
+
+    //quote values not generated by the sts
+    private String literal(String value) {
+        return quote(value.replace("'", "''"));
+    }
 }
@@ -32,4 +32,13 @@ import org.springframework.context.annotation.Configuration;
 public class PostgresqlProperties {
 
     private String database;
+
+    //use shared group roles for connect and membership
+    private boolean groupRoles = false;
+
+    //timeout (seconds) for every statement sent to the database, 0 disables
+    private int statementTimeout = 30;
+
+    //tag created roles with the web identity, to find them without the audit store
+    private boolean tagRoles = false;
 }
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.smartcommunitylab.dbsts.replica;
+
+import it.smartcommunitylab.dbsts.db.DbAdapter;
+import it.smartcommunitylab.dbsts.db.DbUser;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.util.Assert;
+
+/**
+ * Adapter decorator waiting for replicas to replay issued roles, which are then
+ * returned along with the replicas usable for reads. Deletions are not awaited.
+ */
+@Slf4j
+public class ReplicaAwareDbAdapter implements DbAdapter {
+
+    private final DbAdapter adapter;
+    private final ReplicaSet replicas;
+
+    public ReplicaAwareDbAdapter(DbAdapter adapter, ReplicaSet replicas) {
+        Assert.notNull(adapter, "adapter is required");
+        Assert.notNull(replicas, "replicas are required");
+        this.adapter = adapter;
+        this.replicas = replicas;
+    }
+
+    @Override
+    public DbUser create(DbUser user) {
+        return replicate(adapter.create(user));
+    }
+
+    @Override
+    public void delete(DbUser user) {
+        adapter.delete(user);
+    }
+
+    @Override
+    public void delete(Collection<DbUser> users) {
+        adapter.delete(users);
+    }
+
+    @Override
+    public DbUser renew(DbUser user) {
+        return replicate(adapter.renew(user));
+    }
+
+    @Override
+    public DbUser rotate(DbUser user) {
+        return replicate(adapter.rotate(user));
+    }
+
+    @Override
+    public void disable(DbUser user) {
+        adapter.disable(user);
+    }
+
+    @Override
+    public List<DbUser> list(String pattern, String after, int limit) {
+        return adapter.list(pattern, after, limit);
+    }
+
+    @Override
+    public Set<String> exists(Collection<String> usernames) {
+        return adapter.exists(usernames);
+    }
+
+    @Override
+    public List<DbUser> expired(String after, int limit) {
+        return adapter.expired(after, limit);
+    }
+
+    @Override
+    public Set<String> roles() {
+        return adapter.roles();
+    }
+
+    private DbUser replicate(DbUser user) {
+        try {
+            String lsn = replicas.lsn();
+            List<String> ready = replicas.await(lsn);
+            log.debug("user {} replayed on replicas {}", user.getUsername(), ready);
+
+            user.setReplicas(ready);
+        } catch (DataAccessException e) {
+            //the primary is still usable
+            log.warn("Error waiting for replicas: {}", e.getMessage());
+        }
+
+        return user;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright 2025 the original author or authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.smartcommunitylab.dbsts.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import it.smartcommunitylab.dbsts.deadline.Deadline;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Streaming replicas of the adapter database. After provisioning on the primary the
+ * current WAL position is captured, and replicas are polled until they have replayed
+ * it: only replicas which caught up within the bound are handed out as read endpoints.
+ */
+@Slf4j
+public class ReplicaSet implements DisposableBean {
+
+    private static final String CURRENT_LSN_SQL = "SELECT pg_current_wal_insert_lsn()::text";
+    //null when the server is not in recovery
+    private static final String REPLAY_LSN_SQL = "SELECT pg_last_wal_replay_lsn()::text";
+
+    private static final int REPLICA_POOL_SIZE = 2;
+    private static final int REPLICA_QUERY_TIMEOUT = 1;
+
+    private final JdbcTemplate primary;
+    private final Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+
+    private final long waitTimeout;
+    private final long pollInterval;
+
+    public ReplicaSet(DataSource primary, DataSourceProperties connection, ReplicaProperties properties) {
+        Assert.notNull(primary, "primary datasource is required");
+        Assert.hasText(connection.getUrl(), "url is required");
+        Assert.hasText(properties.getHosts(), "replica hosts are required");
+
+        this.primary = new JdbcTemplate(primary);
+        this.waitTimeout = Math.max(properties.getWaitTimeout(), 0);
+        this.pollInterval = Math.max(properties.getPollInterval(), 1);
+
+        for (String host : StringUtils.commaDelimitedListToSet(properties.getHosts())) {
+            String endpoint = host.trim();
+            if (!StringUtils.hasText(endpoint)) {
+                continue;
+            }
+
+            //same database and credentials as the primary
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + endpoint);
+            dataSource.setJdbcUrl(connection.getUrl().replaceFirst("//[^/]+", "//" + endpoint));
+            dataSource.setUsername(connection.getUsername());
+            dataSource.setPassword(connection.getPassword());
+            dataSource.setReadOnly(true);
+            dataSource.setMaximumPoolSize(REPLICA_POOL_SIZE);
+            dataSource.setMinimumIdle(1);
+            dataSource.setConnectionTimeout(Math.max(waitTimeout, 250));
+            //a replica down at startup must not prevent issuance
+            dataSource.setInitializationFailTimeout(-1);
+
+            JdbcTemplate template = new JdbcTemplate(dataSource);
+            template.setQueryTimeout(REPLICA_QUERY_TIMEOUT);
+
+            dataSources.put(endpoint, dataSource);
+            replicas.put(endpoint, template);
+        }
+
+        log.info("replicas: {}", replicas.keySet());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        dataSources.values().forEach(HikariDataSource::close);
+    }
+
+    /**
+     * Current WAL position on the primary, past the commit of every statement already executed
+     */
+    public String lsn() {
+        return primary.queryForObject(CURRENT_LSN_SQL, String.class);
+    }
+
+    /**
+     * Wait until replicas have replayed the given position, bounded by the wait timeout
+     * and by the request deadline. Returns the endpoints which caught up, in order.
+     */
+    public List<String> await(String lsn) {
+        long target = parse(lsn);
+
+        long timeout = waitTimeout;
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            //leave room to respond before the deadline
+            timeout = Math.min(timeout, Math.max(deadline.remaining() - pollInterval, 0));
+        }
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        Set<String> pending = new LinkedHashSet<>(replicas.keySet());
+        while (true) {
+            pending.removeIf(endpoint -> isReplayed(endpoint, target));
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(until - System.nanoTime());
+            if (pending.isEmpty() || remaining <= 0) {
+                break;
+            }
+
+            try {
+                Thread.sleep(Math.min(pollInterval, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            log.debug("replicas {} did not replay {} within {} ms", pending, lsn, timeout);
+        }
+
+        List<String> ready = new ArrayList<>(replicas.keySet());
+        ready.removeAll(pending);
+        return ready;
+    }
+
+    private boolean isReplayed(String endpoint, long target) {
+        try {
+            String replayed = replicas.get(endpoint).queryForObject(REPLAY_LSN_SQL, String.class);
+            if (replayed == null) {
+                log.warn("replica {} is not in recovery", endpoint);
+                return false;
+            }
+
+            return Long.compareUnsigned(parse(replayed), target) >= 0;
+        } catch (DataAccessException e) {
+            log.debug("Error reading replay position on {}: {}", endpoint, e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * LSN text format is two 32 bit hex values, X/Y
+     */
+    static long parse(String lsn) {
+        if (lsn == null || lsn.indexOf('/') < 0) {
+            throw new IllegalArgumentException("invalid lsn");
+        }
+
+        String[] parts = lsn.split("/");
+        return (Long.parseLong(parts[0], 16) << 32) | Long.parseLong(parts[1], 16);
+    }
+}
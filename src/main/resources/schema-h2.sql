@@ -12,4 +12,15 @@ CREATE TABLE
     );
 
 CREATE INDEX IF NOT EXISTS users_id_index ON users (id);
+CREATE INDEX IF NOT EXISTS users_created_at_index ON users (created_at);
+CREATE INDEX IF NOT EXISTS users_db_user_index ON users (db_user);
+CREATE INDEX IF NOT EXISTS users_web_user_index ON users (web_user, web_issuer);
+CREATE INDEX IF NOT EXISTS users_db_database_index ON users (db_database);
+CREATE INDEX IF NOT EXISTS users_valid_until_index ON users (valid_until, _status);
 
+CREATE TABLE
+    IF NOT EXISTS leader_lease (
+        name VARCHAR(255) NOT NULL PRIMARY KEY,
+        holder VARCHAR(255),
+        expires_at TIMESTAMP
+    );
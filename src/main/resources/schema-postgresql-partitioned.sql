@@ -0,0 +1,30 @@
+CREATE TABLE
+    IF NOT EXISTS public.users (
+        id VARCHAR(255) NOT NULL,
+        created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+        web_issuer VARCHAR(255),
+        web_user VARCHAR(255),
+        db_database VARCHAR(255),
+        db_user VARCHAR(255),
+        db_roles VARCHAR(255),
+        valid_until TIMESTAMP(6) WITH TIME ZONE,
+        _status VARCHAR(10),
+        PRIMARY KEY (id, created_at)
+    ) PARTITION BY RANGE (created_at);
+
+-- catch-all partition, monthly partitions are created ahead by the partition manager
+CREATE TABLE IF NOT EXISTS public.users_default PARTITION OF public.users DEFAULT;
+
+CREATE INDEX IF NOT EXISTS users_id_index ON public.users (id);
+CREATE INDEX IF NOT EXISTS users_created_at_index ON public.users (created_at);
+CREATE INDEX IF NOT EXISTS users_db_user_index ON public.users (db_user);
+CREATE INDEX IF NOT EXISTS users_web_user_index ON public.users (web_user, web_issuer);
+CREATE INDEX IF NOT EXISTS users_db_database_index ON public.users (db_database);
+CREATE INDEX IF NOT EXISTS users_valid_until_index ON public.users (valid_until, _status);
+
+CREATE TABLE
+    IF NOT EXISTS public.leader_lease (
+        name VARCHAR(255) NOT NULL PRIMARY KEY,
+        holder VARCHAR(255),
+        expires_at TIMESTAMP
+    );
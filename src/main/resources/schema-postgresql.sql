@@ -12,6 +12,18 @@ CREATE TABLE
     );
 
 CREATE INDEX IF NOT EXISTS users_id_index ON public.users (id);
+CREATE INDEX IF NOT EXISTS users_created_at_index ON public.users (created_at);
+CREATE INDEX IF NOT EXISTS users_db_user_index ON public.users (db_user);
+CREATE INDEX IF NOT EXISTS users_web_user_index ON public.users (web_user, web_issuer);
+CREATE INDEX IF NOT EXISTS users_db_database_index ON public.users (db_database);
+CREATE INDEX IF NOT EXISTS users_valid_until_index ON public.users (valid_until, _status);
+
+CREATE TABLE
+    IF NOT EXISTS public.leader_lease (
+        name VARCHAR(255) NOT NULL PRIMARY KEY,
+        holder VARCHAR(255),
+        expires_at TIMESTAMP
+    );
 
 -- alter table public.runnable
 --     owner to postgres;
\ No newline at end of file